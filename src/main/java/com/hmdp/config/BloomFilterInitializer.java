@@ -0,0 +1,73 @@
+package com.hmdp.config;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.hmdp.service.IShopService;
+import com.hmdp.service.IUserService;
+import com.hmdp.utils.RedisBloomFilter;
+import com.hmdp.utils.RedisConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.List;
+
+/**
+ * 启动时按id分页扫描 tb_shop 和 tb_user，初始化布隆过滤器
+ */
+@Slf4j
+@Component
+public class BloomFilterInitializer implements ApplicationRunner {
+
+    @Resource
+    private RedisBloomFilter bloomFilter;
+    @Resource
+    private IShopService shopService;
+    @Resource
+    private IUserService userService;
+    @Resource
+    private CacheProperties cacheProperties;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!cacheProperties.getBloom().isEnabled()) {
+            return;
+        }
+        load(RedisConstants.CACHE_SHOP_KEY, shopService);
+        load(RedisConstants.CACHE_USER_KEY, userService);
+    }
+
+    private <T> void load(String keyPrefix, IService<T> service) {
+        if (!cacheProperties.getBloom().getFilters().containsKey(keyPrefix)) {
+            return;
+        }
+        try {
+            bloomFilter.prepare(keyPrefix);
+            int pageSize = cacheProperties.getBloom().getLoadPageSize();
+            long lastId = 0;
+            long total = 0;
+            while (true) {
+                // 按主键分页，只查询id一列
+                QueryWrapper<T> wrapper = new QueryWrapper<T>()
+                        .select("id").gt("id", lastId).orderByAsc("id").last("limit " + pageSize);
+                List<Long> ids = service.listObjs(wrapper, id -> ((Number) id).longValue());
+                if (ids.isEmpty()) {
+                    break;
+                }
+                bloomFilter.addAllLocal(keyPrefix, ids);
+                total += ids.size();
+                lastId = ids.get(ids.size() - 1);
+                if (ids.size() < pageSize) {
+                    break;
+                }
+            }
+            bloomFilter.markReady(keyPrefix);
+            log.info("布隆过滤器加载完成, keyPrefix: {}, 数量: {}", keyPrefix, total);
+        } catch (Exception e) {
+            // 加载失败时过滤器保持未就绪状态，不拦截任何请求
+            log.error("布隆过滤器加载失败, keyPrefix: {}", keyPrefix, e);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 缓存相关的配置，对应配置文件中的 hmdp.cache
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.cache")
+public class CacheProperties {
+
+    /**
+     * 本地一级缓存(near cache)配置
+     */
+    private Local local = new Local();
+
+    /**
+     * 缓存值的序列化配置
+     */
+    private Serializer serializer = new Serializer();
+
+    /**
+     * 逻辑过期数据的提前刷新配置
+     */
+    private EarlyRefresh earlyRefresh = new EarlyRefresh();
+
+    /**
+     * 防止缓存穿透的布隆过滤器配置
+     */
+    private Bloom bloom = new Bloom();
+
+    /**
+     * 缓存重建线程池配置
+     */
+    private Rebuild rebuild = new Rebuild();
+
+    /**
+     * 启动时的缓存预热配置
+     */
+    private WarmUp warmUp = new WarmUp();
+
+    @Data
+    public static class Local {
+        /**
+         * 是否开启本地缓存
+         */
+        private boolean enabled = true;
+        /**
+         * 每个key前缀最多缓存的条目数
+         */
+        private long maximumSize = 10000;
+        /**
+         * 写入后多久过期，兜底保证节点间数据最终一致
+         */
+        private Duration expireAfterWrite = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class EarlyRefresh {
+        /**
+         * 是否开启提前刷新(XFetch)，每次读取按概率在过期前触发重建
+         */
+        private boolean enabled = false;
+        /**
+         * 大于1时更倾向于提前刷新，小于1时更接近过期才刷新
+         */
+        private double beta = 1.0;
+    }
+
+    @Data
+    public static class Bloom {
+        /**
+         * 是否开启布隆过滤器
+         */
+        private boolean enabled = true;
+        /**
+         * 按缓存key前缀配置的过滤器，例如 "[cache:shop:]"
+         */
+        private Map<String, BloomSpec> filters = new LinkedHashMap<>();
+        /**
+         * 启动时从数据库分页加载id的每页大小
+         */
+        private int loadPageSize = 5000;
+        /**
+         * 各节点从redis读取其它节点新增元素的间隔
+         */
+        private Duration syncInterval = Duration.ofMinutes(1);
+        /**
+         * redis中新增日志保留的条数，也是每次读取日志的最大条数
+         */
+        private int logSize = 100000;
+    }
+
+    @Data
+    public static class BloomSpec {
+        /**
+         * 预计元素数量
+         */
+        private long expectedInsertions = 1000000;
+        /**
+         * 误判率
+         */
+        private double fpp = 0.001;
+    }
+
+    @Data
+    public static class Rebuild {
+        private int coreSize = 4;
+        private int maxSize = 10;
+        /**
+         * 等待队列容量，队满后新的重建请求被拒绝，继续返回旧数据
+         */
+        private int queueCapacity = 1000;
+        /**
+         * 应用关闭时等待已提交任务完成的最长时间
+         */
+        private Duration shutdownTimeout = Duration.ofSeconds(10);
+    }
+
+    @Data
+    public static class WarmUp {
+        /**
+         * 是否在启动时预热店铺缓存
+         */
+        private boolean enabled = true;
+        /**
+         * 按id范围切分的并行度，每个分片由一个线程分页读取和写入
+         */
+        private int parallelism = 4;
+        /**
+         * 每页读取的行数，也是每次pipeline写入的条数
+         */
+        private int pageSize = 1000;
+        /**
+         * 预热数据的逻辑过期时间随机增加 [0, expireJitter)，避免所有店铺在同一时刻过期
+         */
+        private Duration expireJitter = Duration.ofMinutes(10);
+        /**
+         * 预热失败后的最大重试次数，0表示不重试
+         */
+        private int maxRetries = 10;
+        /**
+         * 第一次重试前的等待时间，之后每次翻倍
+         */
+        private Duration retryBackoff = Duration.ofSeconds(5);
+        /**
+         * 两次重试之间最长的等待时间
+         */
+        private Duration maxRetryBackoff = Duration.ofMinutes(5);
+    }
+
+    public enum SerializerType {
+        JSON, BINARY
+    }
+
+    @Data
+    public static class Serializer {
+        /**
+         * 没有单独配置的key前缀使用的序列化方式
+         */
+        private SerializerType defaultType = SerializerType.JSON;
+        /**
+         * 按key前缀指定序列化方式，例如 "[cache:shop:]": binary
+         */
+        private Map<String, SerializerType> prefixes = new LinkedHashMap<>();
+        /**
+         * 迁移模式：使用二进制格式的前缀仍然可以读取之前写入的JSON数据
+         */
+        private boolean readLegacyJson = true;
+    }
+}
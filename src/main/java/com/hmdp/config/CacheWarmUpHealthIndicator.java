@@ -0,0 +1,54 @@
+package com.hmdp.config;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * 缓存预热状态，预热完成之前返回 OUT_OF_SERVICE，
+ * 加入 readiness 分组后，负载均衡在预热完成前不会把流量转发到本节点。
+ * 预热失败时缓存未命中仍然可以查询数据库，所以返回 UP 并在详情中标记为降级，后台重试成功后恢复
+ */
+@Component
+public class CacheWarmUpHealthIndicator implements HealthIndicator {
+
+    private volatile Health health = Health.outOfService().withDetail("state", "waiting").build();
+
+    @Override
+    public Health health() {
+        return health;
+    }
+
+    public void running() {
+        health = Health.outOfService().withDetail("state", "running").build();
+    }
+
+    public void finished(long shops, long elapsedMillis) {
+        health = Health.up()
+                .withDetail("state", "finished")
+                .withDetail("shops", shops)
+                .withDetail("elapsedMillis", elapsedMillis)
+                .build();
+    }
+
+    public void skipped() {
+        health = Health.up().withDetail("state", "disabled").build();
+    }
+
+    public void retrying(Exception e, int attempt, long nextRetryMillis) {
+        health = Health.up()
+                .withDetail("state", "degraded")
+                .withDetail("attempt", attempt)
+                .withDetail("nextRetryMillis", nextRetryMillis)
+                .withException(e)
+                .build();
+    }
+
+    public void failed(Exception e, int attempts) {
+        health = Health.up()
+                .withDetail("state", "degraded")
+                .withDetail("attempts", attempts)
+                .withException(e)
+                .build();
+    }
+}
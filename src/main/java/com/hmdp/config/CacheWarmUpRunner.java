@@ -0,0 +1,157 @@
+package com.hmdp.config;
+
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.mapper.ShopTypeMapper;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.RedisConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 启动时预热店铺缓存：按id范围把 tb_shop 切成多个分片并行读取，
+ * 每个分片按主键分页，每页用一次pipeline写入逻辑过期数据；同时写入店铺类型列表。
+ * 预热完成之前 {@link CacheWarmUpHealthIndicator} 保持 OUT_OF_SERVICE；
+ * 失败后按指数退避在后台重试，期间健康状态为降级
+ */
+@Slf4j
+@Component
+public class CacheWarmUpRunner implements ApplicationRunner {
+
+    @Resource
+    private ShopMapper shopMapper;
+    @Resource
+    private ShopTypeMapper shopTypeMapper;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private CacheProperties cacheProperties;
+    @Resource
+    private CacheWarmUpHealthIndicator healthIndicator;
+    @Resource
+    private TaskScheduler taskScheduler;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        CacheProperties.WarmUp properties = cacheProperties.getWarmUp();
+        if (!properties.isEnabled()) {
+            healthIndicator.skipped();
+            return;
+        }
+        healthIndicator.running();
+        warmUp(properties, 0);
+    }
+
+    private void warmUp(CacheProperties.WarmUp properties, int attempt) {
+        long begin = System.currentTimeMillis();
+        try {
+            warmUpShopTypes();
+            long shops = warmUpShops(properties);
+            long elapsed = System.currentTimeMillis() - begin;
+            healthIndicator.finished(shops, elapsed);
+            log.info("缓存预热完成, 店铺数量: {}, 耗时: {}ms", shops, elapsed);
+        } catch (Exception e) {
+            if (attempt >= properties.getMaxRetries()) {
+                healthIndicator.failed(e, attempt + 1);
+                log.error("缓存预热失败，不再重试, 尝试次数: {}", attempt + 1, e);
+                return;
+            }
+            // 指数退避，最长不超过 maxRetryBackoff
+            long delay = Math.min(properties.getRetryBackoff().toMillis() << Math.min(attempt, 20),
+                    properties.getMaxRetryBackoff().toMillis());
+            healthIndicator.retrying(e, attempt + 1, delay);
+            log.error("缓存预热失败, {}ms后重试, 尝试次数: {}", delay, attempt + 1, e);
+            taskScheduler.schedule(() -> warmUp(properties, attempt + 1), Instant.now().plusMillis(delay));
+        }
+    }
+
+    private void warmUpShopTypes() {
+        List<ShopType> typeList = shopTypeMapper.selectList(new QueryWrapper<ShopType>().orderByAsc("sort"));
+        if (!typeList.isEmpty()) {
+            stringRedisTemplate.opsForValue().set(RedisConstants.CACHE_SHOP_KEY + "list", JSONUtil.toJsonStr(typeList));
+        }
+    }
+
+    private long warmUpShops(CacheProperties.WarmUp properties) throws Exception {
+        List<Map<String, Object>> range = shopMapper.selectMaps(
+                new QueryWrapper<Shop>().select("min(id) as minId", "max(id) as maxId"));
+        if (range.isEmpty() || range.get(0) == null || range.get(0).get("minId") == null) {
+            return 0;
+        }
+        long minId = ((Number) range.get(0).get("minId")).longValue();
+        long maxId = ((Number) range.get(0).get("maxId")).longValue();
+
+        int parallelism = Math.max(1, properties.getParallelism());
+        long step = (maxId - minId) / parallelism + 1;
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                runnable -> new Thread(runnable, "cache-warmup-" + threadNumber.incrementAndGet()));
+        try {
+            List<Future<Long>> futures = new ArrayList<>(parallelism);
+            for (long from = minId; from <= maxId; from += step) {
+                long lower = from;
+                long upper = Math.min(maxId, from + step - 1);
+                futures.add(executor.submit(() -> warmUpSlice(lower, upper, properties)));
+            }
+            long total = 0;
+            for (Future<Long> future : futures) {
+                total += future.get();
+            }
+            return total;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 预热一个id范围内的店铺，包含两端
+     */
+    private long warmUpSlice(long lower, long upper, CacheProperties.WarmUp properties) {
+        int pageSize = properties.getPageSize();
+        long lastId = lower - 1;
+        long count = 0;
+        while (lastId < upper) {
+            long begin = System.currentTimeMillis();
+            List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                    .gt("id", lastId).le("id", upper).orderByAsc("id").last("limit " + pageSize));
+            // 一页的查询耗时作为每条数据重建耗时的上限估计
+            long cost = Math.max(1, System.currentTimeMillis() - begin);
+            if (shops.isEmpty()) {
+                break;
+            }
+            Map<String, Shop> values = new LinkedHashMap<>(shops.size() * 2);
+            for (Shop shop : shops) {
+                values.put(RedisConstants.CACHE_SHOP_KEY + shop.getId(), shop);
+            }
+            cacheClient.setAllWithLogicalExpire(values, RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES,
+                    properties.getExpireJitter(), cost);
+            count += shops.size();
+            lastId = shops.get(shops.size() - 1).getId();
+            if (shops.size() < pageSize) {
+                break;
+            }
+        }
+        return count;
+    }
+}
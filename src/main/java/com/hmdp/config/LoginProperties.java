@@ -0,0 +1,111 @@
+package com.hmdp.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 登录配置，对应配置文件中的 hmdp.login
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.login")
+public class LoginProperties {
+
+    /**
+     * 登录时签发的token类型，两种token都可以通过校验，切换后已登录的用户不受影响
+     */
+    private TokenMode tokenMode = TokenMode.SESSION;
+
+    /**
+     * SESSION模式下token剩余有效期低于这个值时才续期
+     */
+    private Duration refreshThreshold = Duration.ofHours(9);
+
+    private Signed signed = new Signed();
+
+    private Limit limit = new Limit();
+
+    public enum TokenMode {
+        /**
+         * 随机token，用户信息保存在redis的hash中
+         */
+        SESSION,
+        /**
+         * 签名token，用户信息和过期时间保存在token中，校验不需要访问redis
+         */
+        SIGNED
+    }
+
+    @Data
+    public static class Signed {
+        /**
+         * HMAC密钥，所有节点必须一致，SIGNED模式下必须配置
+         */
+        private String secret;
+        /**
+         * token的有效期
+         */
+        private Duration ttl = Duration.ofHours(10);
+        /**
+         * 剩余有效期低于这个值时换发一次新的token，一般取有效期的10%~20%
+         */
+        private Duration reissueBefore = Duration.ofMinutes(90);
+        /**
+         * 从redis同步登出记录的间隔，同时清理超过token有效期的记录
+         */
+        private Duration revokeSyncInterval = Duration.ofMinutes(1);
+    }
+
+    @Data
+    public static class Limit {
+        /**
+         * 是否开启发送验证码和登录的防刷
+         */
+        private boolean enabled = true;
+        /**
+         * 发送验证码的限制
+         */
+        private Window sendCode = new Window(1, Duration.ofMinutes(1), 20, Duration.ofMinutes(10));
+        /**
+         * 登录的限制，同一个验证码最多尝试 phoneLimit 次
+         */
+        private Window login = new Window(5, Duration.ofMinutes(10), 50, Duration.ofMinutes(10));
+        /**
+         * 首次超限的锁定时间，之后每次超限翻倍
+         */
+        private Duration lockBase = Duration.ofMinutes(1);
+        /**
+         * 最长锁定时间
+         */
+        private Duration lockMax = Duration.ofHours(24);
+        /**
+         * 超限次数的保留时间，期间没有再超限则锁定时间恢复为 lockBase
+         */
+        private Duration lockLevelTtl = Duration.ofHours(24);
+        /**
+         * 本地缓存的已锁定手机号和ip的最大数量
+         */
+        private long localMaximumSize = 100000;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Window {
+        /**
+         * 每个手机号在窗口内允许的请求数
+         */
+        private int phoneLimit;
+        private Duration phoneWindow;
+        /**
+         * 每个ip在窗口内允许的请求数
+         */
+        private int ipLimit;
+        private Duration ipWindow;
+    }
+}
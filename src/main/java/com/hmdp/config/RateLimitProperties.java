@@ -0,0 +1,58 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 接口限流配置，对应配置文件中的 hmdp.rate-limit
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.rate-limit")
+public class RateLimitProperties {
+
+    /**
+     * 是否开启限流
+     */
+    private boolean enabled = true;
+
+    /**
+     * 限流规则，按顺序匹配，请求只使用第一条匹配的规则
+     */
+    private List<Rule> rules = new ArrayList<>();
+
+    @Data
+    public static class Rule {
+        /**
+         * 规则名称，用于redis的key和监控指标
+         */
+        private String name;
+        /**
+         * 请求路径，Ant风格，例如 /voucher-order/seckill/**
+         */
+        private String pattern;
+        /**
+         * 单个节点每秒放行的请求数，0表示不限制
+         */
+        private double localRate;
+        /**
+         * 单个节点允许的突发请求数
+         */
+        private int localBurst;
+        /**
+         * 每个用户在窗口内允许的请求数，0表示不限制；未登录时按ip限制
+         */
+        private int userLimit;
+        private Duration userWindow = Duration.ofSeconds(1);
+        /**
+         * 所有节点合计在窗口内允许的请求数，0表示不限制
+         */
+        private int globalLimit;
+        private Duration globalWindow = Duration.ofSeconds(1);
+    }
+}
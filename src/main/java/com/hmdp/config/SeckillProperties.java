@@ -0,0 +1,110 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 秒杀相关的配置，对应配置文件中的 hmdp.seckill
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.seckill")
+public class SeckillProperties {
+
+    /**
+     * 订单批量写入数据库的配置
+     */
+    private Order order = new Order();
+
+    /**
+     * redis中秒杀库存的配置
+     */
+    private Stock stock = new Stock();
+
+    /**
+     * redis库存与数据库的对账配置
+     */
+    private Reconcile reconcile = new Reconcile();
+
+    /**
+     * 未支付订单的超时取消配置
+     */
+    private Timeout timeout = new Timeout();
+
+    @Data
+    public static class Order {
+        /**
+         * 每批最多写入的订单数
+         */
+        private int batchSize = 100;
+        /**
+         * 从收到第一条订单开始，最多等待多久凑满一批
+         */
+        private Duration batchWait = Duration.ofMillis(50);
+        /**
+         * pending-list中的消息最多投递几次，仍然处理失败时转入死信队列
+         */
+        private int maxDeliveries = 5;
+    }
+
+    @Data
+    public static class Stock {
+        /**
+         * 启动时从数据库分页加载秒杀库存的每页大小
+         */
+        private int loadPageSize = 500;
+    }
+
+    @Data
+    public static class Timeout {
+        private boolean enabled = true;
+        /**
+         * 下单后多久未支付自动取消
+         */
+        private Duration payTimeout = Duration.ofMinutes(15);
+        /**
+         * 没有到期订单时的轮询间隔
+         */
+        private Duration pollInterval = Duration.ofSeconds(1);
+        /**
+         * 每次领取的订单数
+         */
+        private int batchSize = 100;
+        /**
+         * 领取后的处理时限，超过后其它节点可以重新领取
+         */
+        private Duration lease = Duration.ofMinutes(1);
+        /**
+         * 到期时订单还没有写入数据库(仍在消息队列中)，隔多久再检查
+         */
+        private Duration retryDelay = Duration.ofSeconds(30);
+    }
+
+    public enum ReconcileMode {
+        /**
+         * 只记录不一致
+         */
+        REPORT,
+        /**
+         * 记录并以数据库为准修复redis
+         */
+        REPAIR
+    }
+
+    @Data
+    public static class Reconcile {
+        private boolean enabled = true;
+        private ReconcileMode mode = ReconcileMode.REPORT;
+        /**
+         * 两次对账之间的间隔
+         */
+        private Duration interval = Duration.ofMinutes(5);
+        /**
+         * 每页处理的优惠券数量，也是扫描已下单用户时每批的数量
+         */
+        private int pageSize = 200;
+    }
+}
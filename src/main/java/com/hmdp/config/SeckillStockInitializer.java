@@ -0,0 +1,56 @@
+package com.hmdp.config;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.utils.SeckillStockManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 启动时把还没有结束的秒杀优惠券的库存加载到redis，已经存在的不覆盖
+ */
+@Slf4j
+@Component
+public class SeckillStockInitializer implements ApplicationRunner {
+
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private SeckillStockManager stockManager;
+    @Resource
+    private SeckillProperties seckillProperties;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            int pageSize = seckillProperties.getStock().getLoadPageSize();
+            LocalDateTime now = LocalDateTime.now();
+            long lastId = 0;
+            int published = 0;
+            while (true) {
+                List<SeckillVoucher> vouchers = seckillVoucherService.list(new QueryWrapper<SeckillVoucher>()
+                        .gt("voucher_id", lastId).gt("end_time", now)
+                        .orderByAsc("voucher_id").last("limit " + pageSize));
+                for (SeckillVoucher voucher : vouchers) {
+                    if (stockManager.publish(voucher, false)) {
+                        published++;
+                    }
+                }
+                if (vouchers.size() < pageSize) {
+                    break;
+                }
+                lastId = vouchers.get(vouchers.size() - 1).getVoucherId();
+            }
+            log.info("秒杀库存加载完成, 新写入的优惠券数量: {}", published);
+        } catch (Exception e) {
+            log.error("秒杀库存加载失败", e);
+        }
+    }
+}
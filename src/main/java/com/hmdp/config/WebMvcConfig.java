@@ -1,6 +1,8 @@
 package com.hmdp.config;
 
+import com.hmdp.interceptor.AdminInterceptor;
 import com.hmdp.interceptor.LoginInterceptor;
+import com.hmdp.interceptor.RateLimitInterceptor;
 import com.hmdp.interceptor.RefreshTokenInterception;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
@@ -17,6 +19,12 @@ public class WebMvcConfig implements WebMvcConfigurer {
     @Autowired
     private LoginInterceptor loginInterceptor;
 
+    @Autowired
+    private RateLimitInterceptor rateLimitInterceptor;
+
+    @Autowired
+    private AdminInterceptor adminInterceptor;
+
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
 
@@ -24,10 +32,17 @@ public class WebMvcConfig implements WebMvcConfigurer {
         registry.addInterceptor(refreshTokenInterception)
                 .addPathPatterns("/**");
 
+        // 限流，放在刷新token之后，可以按用户限制
+        registry.addInterceptor(rateLimitInterceptor)
+                .addPathPatterns("/**");
 
         registry.addInterceptor(loginInterceptor)
                 .excludePathPatterns("/user/login",
                         "/user/code",
                         "/user/me");
+
+        // 运营接口只允许管理员访问
+        registry.addInterceptor(adminInterceptor)
+                .addPathPatterns("/stats/**");
     }
 }
@@ -6,6 +6,9 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.service.IShopService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.RedisBloomFilter;
+import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.SystemConstants;
 import org.springframework.web.bind.annotation.*;
 
@@ -26,6 +29,12 @@ public class ShopController {
     @Resource
     public IShopService shopService;
 
+    @Resource
+    private RedisBloomFilter bloomFilter;
+
+    @Resource
+    private CacheClient cacheClient;
+
     /**
      * 根据id查询商铺信息
      * @param id 商铺id
@@ -45,6 +54,10 @@ public class ShopController {
     public Result saveShop(@RequestBody Shop shop) {
         // 写入数据库
         shopService.save(shop);
+        // 加入布隆过滤器，否则新店铺会被当作不存在的id拦截
+        bloomFilter.add(RedisConstants.CACHE_SHOP_KEY, shop.getId());
+        // 删除之前查询这个id时可能缓存的空值，下一次查询从数据库加载
+        cacheClient.delete(RedisConstants.CACHE_SHOP_KEY + shop.getId());
         // 返回店铺id
         return Result.ok(shop.getId());
     }
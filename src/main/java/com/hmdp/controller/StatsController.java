@@ -0,0 +1,32 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UvStatsDTO;
+import com.hmdp.utils.UvCounter;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * <p>
+ * 运营统计
+ * </p>
+ */
+@RestController
+@RequestMapping("/stats")
+public class StatsController {
+
+    @Resource
+    private UvCounter uvCounter;
+
+    /**
+     * 日活、周活、月活，基于HyperLogLog，误差约0.81%。只有 hmdp.admin.user-ids 中的管理员可以访问
+     */
+    @GetMapping("/uv")
+    public Result uv() {
+        return Result.ok(new UvStatsDTO(uvCounter.count(1), uvCounter.count(7), uvCounter.count(30)));
+    }
+}
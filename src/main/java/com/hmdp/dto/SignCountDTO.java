@@ -0,0 +1,19 @@
+package com.hmdp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SignCountDTO {
+    /**
+     * 截至今天的连续签到天数，今天还没有签到时为0
+     */
+    private Integer continuous;
+    /**
+     * 本月的签到天数
+     */
+    private Integer count;
+}
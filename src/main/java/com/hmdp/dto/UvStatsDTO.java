@@ -0,0 +1,23 @@
+package com.hmdp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UvStatsDTO {
+    /**
+     * 今天的登录用户数
+     */
+    private Long dau;
+    /**
+     * 最近7天的登录用户数
+     */
+    private Long wau;
+    /**
+     * 最近30天的登录用户数
+     */
+    private Long mau;
+}
@@ -0,0 +1,46 @@
+package com.hmdp.interceptor;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.utils.UserHolder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 运营接口只允许配置的管理员访问，放在登录拦截器之后，其它已登录用户返回403
+ */
+@Component
+public class AdminInterceptor implements HandlerInterceptor {
+
+    /**
+     * 管理员的用户id，默认为空，即所有人都不能访问
+     */
+    private final Set<Long> adminIds;
+
+    @Autowired
+    public AdminInterceptor(@Value("${hmdp.admin.user-ids:}") List<Long> adminIds) {
+        this.adminIds = new HashSet<>(adminIds);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        UserDTO user = UserHolder.getUser();
+        if (user == null) {
+            response.setStatus(HttpStatus.UNAUTHORIZED.value());
+            return false;
+        }
+        if (!adminIds.contains(user.getId())) {
+            response.setStatus(HttpStatus.FORBIDDEN.value());
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,156 @@
+package com.hmdp.interceptor;
+
+import com.hmdp.config.RateLimitProperties;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.utils.ClientIpResolver;
+import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.TokenBucket;
+import com.hmdp.utils.UserHolder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 限流拦截器，按路径匹配限流规则，依次检查：
+ * 1.本节点的令牌桶，不产生IO，挡住超出单节点处理能力的请求；
+ * 2.redis中的滑动窗口，用一次lua脚本同时检查每个用户和所有节点合计的请求数。
+ * 超限的请求直接返回429；redis不可用时只使用本节点的限制
+ */
+@Slf4j
+@Component
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private static final DefaultRedisScript<Long> RATE_LIMIT_SCRIPT;
+
+    static {
+        RATE_LIMIT_SCRIPT = new DefaultRedisScript<>();
+        RATE_LIMIT_SCRIPT.setLocation(new ClassPathResource("lua/rate_limit.lua"));
+        RATE_LIMIT_SCRIPT.setResultType(Long.class);
+    }
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ClientIpResolver clientIpResolver;
+    private final boolean enabled;
+    private final List<Limiter> limiters = new ArrayList<>();
+
+    @Autowired
+    public RateLimitInterceptor(RateLimitProperties properties,
+                                StringRedisTemplate stringRedisTemplate,
+                                ClientIpResolver clientIpResolver,
+                                MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.clientIpResolver = clientIpResolver;
+        this.enabled = properties.isEnabled();
+        for (RateLimitProperties.Rule rule : properties.getRules()) {
+            limiters.add(new Limiter(rule, meterRegistry));
+        }
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (!enabled) {
+            return true;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        for (Limiter limiter : limiters) {
+            if (pathMatcher.match(limiter.rule.getPattern(), path)) {
+                return limiter.acquire(request, response);
+            }
+        }
+        return true;
+    }
+
+    private final class Limiter {
+        private final RateLimitProperties.Rule rule;
+        private final TokenBucket bucket;
+        private final Counter admitted;
+        private final Counter rejectedLocal;
+        private final Counter rejectedUser;
+        private final Counter rejectedGlobal;
+
+        Limiter(RateLimitProperties.Rule rule, MeterRegistry meterRegistry) {
+            this.rule = rule;
+            this.bucket = rule.getLocalRate() > 0
+                    ? new TokenBucket(rule.getLocalRate(), Math.max(rule.getLocalBurst(), 1))
+                    : null;
+            this.admitted = Counter.builder("rate.limit.admitted")
+                    .tag("rule", rule.getName())
+                    .register(meterRegistry);
+            this.rejectedLocal = rejected(meterRegistry, "local");
+            this.rejectedUser = rejected(meterRegistry, "user");
+            this.rejectedGlobal = rejected(meterRegistry, "global");
+        }
+
+        private Counter rejected(MeterRegistry meterRegistry, String reason) {
+            return Counter.builder("rate.limit.rejected")
+                    .tag("rule", rule.getName())
+                    .tag("reason", reason)
+                    .register(meterRegistry);
+        }
+
+        boolean acquire(HttpServletRequest request, HttpServletResponse response) {
+            if (bucket != null && !bucket.tryAcquire()) {
+                return reject(response, rejectedLocal);
+            }
+            List<String> keys = new ArrayList<>(2);
+            List<String> args = new ArrayList<>(6);
+            args.add(String.valueOf(System.currentTimeMillis()));
+            args.add(SystemConstants.NODE_ID + ":" + sequence.incrementAndGet());
+            List<Counter> reasons = new ArrayList<>(2);
+            if (rule.getUserLimit() > 0) {
+                UserDTO user = UserHolder.getUser();
+                String subject = user != null ? user.getId().toString() : "ip:" + clientIpResolver.resolve(request);
+                keys.add(RedisConstants.RATE_LIMIT_KEY + rule.getName() + ":user:" + subject);
+                args.add(String.valueOf(rule.getUserLimit()));
+                args.add(String.valueOf(rule.getUserWindow().toMillis()));
+                reasons.add(rejectedUser);
+            }
+            if (rule.getGlobalLimit() > 0) {
+                keys.add(RedisConstants.RATE_LIMIT_KEY + rule.getName() + ":global");
+                args.add(String.valueOf(rule.getGlobalLimit()));
+                args.add(String.valueOf(rule.getGlobalWindow().toMillis()));
+                reasons.add(rejectedGlobal);
+            }
+            if (!keys.isEmpty()) {
+                Long result;
+                try {
+                    result = stringRedisTemplate.execute(RATE_LIMIT_SCRIPT, keys, args.toArray());
+                } catch (Exception e) {
+                    log.error("限流脚本执行失败，只使用本节点的限制, rule: {}", rule.getName(), e);
+                    result = 0L;
+                }
+                if (result != null && result > 0) {
+                    return reject(response, reasons.get(result.intValue() - 1));
+                }
+            }
+            admitted.increment();
+            return true;
+        }
+
+        private boolean reject(HttpServletResponse response, Counter counter) {
+            counter.increment();
+            // 后续拦截器不会执行，在这里清除用户信息
+            UserHolder.removeUser();
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            return false;
+        }
+    }
+}
@@ -3,17 +3,24 @@ package com.hmdp.interceptor;
 
 import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
+import com.hmdp.config.LoginProperties;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
+import com.hmdp.utils.LoginSession;
+import com.hmdp.utils.NearCache;
 import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.SignedTokenManager;
 import com.hmdp.utils.UserHolder;
+import com.hmdp.utils.UvCounter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerInterceptor;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -27,6 +34,18 @@ public class RefreshTokenInterception implements HandlerInterceptor {
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
 
+    @Autowired
+    private NearCache nearCache;
+
+    @Autowired
+    private SignedTokenManager signedTokenManager;
+
+    @Autowired
+    private LoginProperties loginProperties;
+
+    @Autowired
+    private UvCounter uvCounter;
+
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
         // 1.从请求头中获取token
@@ -36,24 +55,72 @@ public class RefreshTokenInterception implements HandlerInterceptor {
             // 不存在直接放行
             return true;
         }
-        // 3.存在token，查询redis中的用户
+        // 签名token在本地校验，不访问redis
+        if (SignedTokenManager.isSignedToken(token)) {
+            return handleSignedToken(token, response);
+        }
+        // 3.存在token，先查询本地缓存，未命中再查询redis中的用户
         String key = RedisConstants.LOGIN_USER_KEY + token;
-        Map<Object, Object> map = stringRedisTemplate.opsForHash().entries(key);
+        LoginSession session = loadSession(key);
         // 4.判断用户是否存在
-        if (map.isEmpty()){
+        if (session == null){
             return true;
         }
-        UserDTO userDTO = BeanUtil.copyProperties(map,UserDTO.class);
         // 6.用户存在，将用户信息保存到ThreadLocal中
-        UserHolder.saveUser(userDTO);
+        UserHolder.saveUser(session.getUser());
+        uvCounter.record(session.getUser().getId());
 
-        // 7.用户存在，更新redis中用户的有效期
-        stringRedisTemplate.expire(key, RedisConstants.LOGIN_USER_TTL, TimeUnit.SECONDS);
+        // 7.剩余有效期低于阈值时才更新redis中用户的有效期，避免每个请求都访问redis
+        long now = System.currentTimeMillis();
+        if (session.getExpireAt() - now < loginProperties.getRefreshThreshold().toMillis()) {
+            stringRedisTemplate.expire(key, RedisConstants.LOGIN_USER_TTL, TimeUnit.SECONDS);
+            session.setExpireAt(now + TimeUnit.SECONDS.toMillis(RedisConstants.LOGIN_USER_TTL));
+        }
 
         // 8.放行
         return true;
     }
 
+    private boolean handleSignedToken(String token, HttpServletResponse response) {
+        SignedTokenManager.SignedToken signed = signedTokenManager.parse(token);
+        if (signed == null) {
+            return true;
+        }
+        UserHolder.saveUser(signed.getUser());
+        uvCounter.record(signed.getUser().getId());
+        // 签名token不能延长有效期，快要过期时在响应头中返回一次新的token，由前端替换
+        String reissued = signedTokenManager.reissue(signed);
+        if (reissued != null) {
+            response.setHeader("authorization", reissued);
+        }
+        return true;
+    }
+
+    private LoginSession loadSession(String key) {
+        Object local = nearCache.get(RedisConstants.LOGIN_USER_KEY, key);
+        if (local instanceof LoginSession) {
+            return (LoginSession) local;
+        }
+        // 一次往返同时读取用户和剩余有效期，是否续期由调用方按阈值判断
+        byte[] rawKey = stringRedisTemplate.getStringSerializer().serialize(key);
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.hGetAll(rawKey);
+            connection.pTtl(rawKey);
+            return null;
+        });
+        Map<?, ?> map = (Map<?, ?>) results.get(0);
+        if (map == null || map.isEmpty()){
+            return null;
+        }
+        UserDTO userDTO = BeanUtil.copyProperties(map,UserDTO.class);
+        Long ttl = (Long) results.get(1);
+        // 没有过期时间(-1)时按已到期处理，下一步会设置有效期
+        long now = System.currentTimeMillis();
+        LoginSession session = new LoginSession(userDTO, ttl != null && ttl > 0 ? now + ttl : now);
+        nearCache.put(RedisConstants.LOGIN_USER_KEY, key, session);
+        return session;
+    }
+
     @Override
     public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) throws Exception {
         HandlerInterceptor.super.afterCompletion(request, response, handler, ex);
@@ -0,0 +1,22 @@
+package com.hmdp.mapper;
+
+import com.hmdp.entity.Sign;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * <p>
+ *  Mapper 接口
+ * </p>
+ */
+public interface SignMapper extends BaseMapper<Sign> {
+
+    /**
+     * 一条语句写入多个用户的月签到记录，已存在的记录与新的记录按位或合并
+     * @param signs 签到记录
+     * @return 影响的行数
+     */
+    int upsertBatch(@Param("signs") List<Sign> signs);
+}
@@ -13,4 +13,10 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface UserMapper extends BaseMapper<User> {
 
+    /**
+     * 按手机号创建用户，手机号已存在时忽略，不抛出唯一索引冲突
+     * @param user 用户，只写入手机号和昵称，写入成功时回填id
+     * @return 写入的行数，0表示手机号已存在
+     */
+    int insertIgnore(User user);
 }
@@ -0,0 +1,23 @@
+package com.hmdp.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.Sign;
+
+/**
+ * <p>
+ *  服务类
+ * </p>
+ */
+public interface ISignService extends IService<Sign> {
+
+    /**
+     * 当前用户今天签到
+     */
+    Result sign();
+
+    /**
+     * 查询当前用户本月的连续签到天数和签到总天数
+     */
+    Result signCount();
+}
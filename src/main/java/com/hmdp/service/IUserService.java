@@ -30,4 +30,10 @@ public interface IUserService extends IService<User> {
      * @param loginForm 登录参数，包含手机号、验证码；或者手机号、密码
      */
     Result login(LoginFormDTO loginForm, HttpSession session);
+
+    /**
+     * 登出功能，删除redis中的token并失效各节点本地缓存的登录信息
+     * @param token 登录凭证
+     */
+    Result logout(String token);
 }
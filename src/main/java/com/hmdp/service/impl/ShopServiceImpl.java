@@ -92,9 +92,9 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
 
         // 1.先操作数据库
         updateById(shop);
-        // 2.采用删除策略，删除缓存中的数据
+        // 2.采用删除策略，删除缓存中的数据，并通知其它节点失效本地缓存
         String key = RedisConstants.CACHE_SHOP_KEY + shop.getId();
-        stringRedisTemplate.delete(key);
+        cacheClient.delete(key);
         return Result.ok(shop);
     }
 
@@ -109,12 +109,8 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     public void saveShopWithLogicalExpired(Long id, Long time, TimeUnit timeUnit) {
         // 1.查询数据库
         Shop shop = getById(id);
-        // 2.封装成RedisData对象
-        RedisData redisData = RedisData.builder()
-                .data(shop)
-                .expireTime(LocalDateTime.now().plusSeconds(timeUnit.toSeconds(time)))
-                .build();
+        // 2.封装成RedisData对象并写入redis，序列化方式由CacheClient按前缀决定
         String key = RedisConstants.CACHE_SHOP_KEY + shop.getId();
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        cacheClient.setWithLogicalExpire(key, shop, time, timeUnit);
     }
 }
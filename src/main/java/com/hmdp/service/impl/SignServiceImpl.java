@@ -0,0 +1,66 @@
+package com.hmdp.service.impl;
+
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.SignCountDTO;
+import com.hmdp.entity.Sign;
+import com.hmdp.mapper.SignMapper;
+import com.hmdp.service.ISignService;
+import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.UserHolder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * <p>
+ * 服务实现类。签到记录保存在redis的bitmap中，每个用户每个月一个key：sign:{userId}:{yyyyMM}，
+ * 第n天对应第n-1位；每天夜里由 {@link com.hmdp.utils.SignCompactor} 合并到 tb_sign
+ * </p>
+ */
+@Service
+public class SignServiceImpl extends ServiceImpl<SignMapper, Sign> implements ISignService {
+
+    public static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyyMM");
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Override
+    public Result sign() {
+        Long userId = UserHolder.getUser().getId();
+        LocalDate today = LocalDate.now();
+        stringRedisTemplate.opsForValue().setBit(signKey(userId, today), today.getDayOfMonth() - 1, true);
+        return Result.ok();
+    }
+
+    @Override
+    public Result signCount() {
+        return Result.ok(signCount(UserHolder.getUser().getId(), LocalDate.now()));
+    }
+
+    /**
+     * 统计用户本月截至today的签到情况
+     */
+    SignCountDTO signCount(Long userId, LocalDate today) {
+        int day = today.getDayOfMonth();
+        // 一次BITFIELD取出本月1号到今天的签到记录，今天在最低位
+        List<Long> result = stringRedisTemplate.opsForValue().bitField(signKey(userId, today),
+                BitFieldSubCommands.create()
+                        .get(BitFieldSubCommands.BitFieldType.unsigned(day))
+                        .valueAt(0));
+        long bits = result == null || result.isEmpty() || result.get(0) == null ? 0 : result.get(0);
+        // 从最低位开始连续的1的个数就是连续签到的天数
+        int continuous = Long.numberOfTrailingZeros(~bits);
+        return new SignCountDTO(continuous, Long.bitCount(bits));
+    }
+
+    public static String signKey(Long userId, LocalDate date) {
+        return RedisConstants.USER_SIGN_KEY + userId + ":" + date.format(MONTH_FORMATTER);
+    }
+}
@@ -1,25 +1,42 @@
 package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.bean.copier.CopyOptions;
 import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.conditions.query.QueryChainWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.config.LoginProperties;
 import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.ClientIpResolver;
+import com.hmdp.utils.LoginLimiter;
+import com.hmdp.utils.NearCache;
+import com.hmdp.utils.RedisBloomFilter;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.RegexUtils;
+import com.hmdp.utils.SignedTokenManager;
 import com.hmdp.utils.SystemConstants;
 import io.netty.util.internal.StringUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
 import javax.servlet.http.HttpSession;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
@@ -36,9 +53,35 @@ import java.util.concurrent.TimeUnit;
 @Slf4j
 public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IUserService {
 
+    private static final DefaultRedisScript<Long> HASH_CACHE_SCRIPT;
+
+    static {
+        HASH_CACHE_SCRIPT = new DefaultRedisScript<>();
+        HASH_CACHE_SCRIPT.setLocation(new ClassPathResource("lua/hash_cache.lua"));
+        HASH_CACHE_SCRIPT.setResultType(Long.class);
+    }
+
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
 
+    @Autowired
+    private RedisBloomFilter bloomFilter;
+
+    @Autowired
+    private NearCache nearCache;
+
+    @Autowired
+    private SignedTokenManager signedTokenManager;
+
+    @Autowired
+    private LoginProperties loginProperties;
+
+    @Autowired
+    private LoginLimiter loginLimiter;
+
+    @Autowired
+    private ClientIpResolver clientIpResolver;
+
     /**
      * 发送手机验证码
      * @param phone 手机号
@@ -53,6 +96,12 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
             return Result.fail("手机号格式错误！");
         }
 
+        // 同一个手机号、ip发送过于频繁时拒绝，避免写入大量验证码
+        long lock = loginLimiter.tryAcquire(LoginLimiter.SCENE_SEND_CODE, phone, clientIp());
+        if (lock > 0) {
+            return tooFrequent(lock);
+        }
+
         // 3.生成一个六位数的验证码
         String code = RandomUtil.randomNumbers(6);
 
@@ -86,6 +135,12 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
             return Result.fail("手机号格式错误!");
         }
 
+        // 限制尝试次数，防止暴力破解验证码
+        long lock = loginLimiter.tryAcquire(LoginLimiter.SCENE_LOGIN, phone, clientIp());
+        if (lock > 0) {
+            return tooFrequent(lock);
+        }
+
         // 2.校验验证码
         String code = loginForm.getCode();
 //        String cacheCode = (String) session.getAttribute("code");
@@ -95,22 +150,26 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
             return Result.fail("验证码错误！");
         }
 
-        // 3.查询用户, 通过MybatisPlus实现简单的sql语句
-
-        User user = query().eq("phone", phone).one();
+        // 3.按手机号查询用户，先查询缓存
+        UserDTO userDTO = queryByPhone(phone);
         // 4.判断当前用户是否存在
-        if (user == null) {
+        if (userDTO == null) {
             // 不存在，则创建一个新用户保存到数据库中
-            user = createUserWithPhone(phone);
+            userDTO = createUserWithPhone(phone);
         }
 
-//        // 5.保存用户信息到session中
-//        session.setAttribute("user", BeanUtil.copyProperties(user, UserDTO.class));
+        // 签名token模式下用户信息保存在token中，不需要写入redis
+        if (loginProperties.getTokenMode() == LoginProperties.TokenMode.SIGNED) {
+            return Result.ok(signedTokenManager.issue(userDTO));
+        }
 
         // 5.保存用户信息到redis中, 使用uuid作为token
-        UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);
 
-        Map<String, Object> map = BeanUtil.beanToMap(userDTO);
+        // StringRedisTemplate只能保存字符串，id等字段转换为字符串
+        Map<String, Object> map = BeanUtil.beanToMap(userDTO, new HashMap<>(),
+                CopyOptions.create()
+                        .setIgnoreNullValue(true)
+                        .setFieldValueEditor((fieldName, fieldValue) -> fieldValue.toString()));
 
         String token = UUID.randomUUID().toString();
 
@@ -124,10 +183,106 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         return Result.ok(token);
     }
 
-    private User createUserWithPhone(String phone) {
-        return User.builder()
+    /**
+     * 登出功能
+     * @param token 登录凭证
+     */
+    @Override
+    public Result logout(String token) {
+        if (StrUtil.isBlank(token)) {
+            return Result.ok();
+        }
+        if (SignedTokenManager.isSignedToken(token)) {
+            // 签名token按用户登出，换发过的其它token同时失效
+            signedTokenManager.revoke(token);
+            return Result.ok();
+        }
+        String key = RedisConstants.LOGIN_USER_KEY + token;
+        stringRedisTemplate.delete(key);
+        // 其它节点本地缓存的登录信息也要失效，否则在本地缓存过期前仍然有效
+        nearCache.evict(key);
+        return Result.ok();
+    }
+
+    private static Result tooFrequent(long lockMillis) {
+        return Result.fail("操作过于频繁，请" + TimeUnit.MILLISECONDS.toSeconds(lockMillis + 999) + "秒后再试");
+    }
+
+    /**
+     * 当前请求的客户端ip，经过受信任的代理时取转发头中的地址；不在请求线程中调用时返回null
+     */
+    private String clientIp() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return null;
+        }
+        return clientIpResolver.resolve(((ServletRequestAttributes) attributes).getRequest());
+    }
+
+    /**
+     * 按手机号查询用户。缓存是一个hash，不存在的手机号缓存一个id为空的hash，避免重复查询数据库
+     */
+    private UserDTO queryByPhone(String phone) {
+        String key = RedisConstants.CACHE_USER_PHONE_KEY + phone;
+        Map<Object, Object> cached = stringRedisTemplate.opsForHash().entries(key);
+        if (!cached.isEmpty()) {
+            if (StrUtil.isBlank((String) cached.get("id"))) {
+                return null;
+            }
+            return BeanUtil.fillBeanWithMap(cached, new UserDTO(), false);
+        }
+        User user = query().select("id", "nick_name", "icon").eq("phone", phone).one();
+        if (user == null) {
+            // 并发创建的用户已经写入缓存时不覆盖
+            cacheHash(key, Collections.singletonMap("id", ""),
+                    TimeUnit.MINUTES.toSeconds(RedisConstants.CACHE_NULL_TTL), true);
+            return null;
+        }
+        UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);
+        cacheByPhone(phone, userDTO);
+        return userDTO;
+    }
+
+    private void cacheByPhone(String phone, UserDTO userDTO) {
+        String key = RedisConstants.CACHE_USER_PHONE_KEY + phone;
+        // 直接覆盖id字段，空值占位随之失效
+        cacheHash(key, BeanUtil.beanToMap(userDTO, new HashMap<>(),
+                CopyOptions.create()
+                        .setIgnoreNullValue(true)
+                        .setFieldValueEditor((fieldName, fieldValue) -> fieldValue.toString())),
+                TimeUnit.MINUTES.toSeconds(RedisConstants.CACHE_USER_TTL), false);
+    }
+
+    /**
+     * 用一个脚本写入hash并设置过期时间
+     * @param onlyIfAbsent key已经存在时不写入
+     */
+    private void cacheHash(String key, Map<String, ?> values, long ttlSeconds, boolean onlyIfAbsent) {
+        List<String> args = new ArrayList<>(values.size() * 2 + 2);
+        args.add(String.valueOf(ttlSeconds));
+        args.add(onlyIfAbsent ? "1" : "0");
+        values.forEach((field, value) -> {
+            args.add(field);
+            args.add(String.valueOf(value));
+        });
+        stringRedisTemplate.execute(HASH_CACHE_SCRIPT, Collections.singletonList(key), args.toArray());
+    }
+
+    private UserDTO createUserWithPhone(String phone) {
+        User user = User.builder()
                 .phone(phone)
                 .nickName(SystemConstants.USER_NICK_NAME_PREFIX + RandomUtil.randomString(10))
                 .build();
+        // 同一个手机号并发首次登录时只有一个请求写入成功，其它请求查询已经写入的用户，不会报错或重试
+        if (baseMapper.insertIgnore(user) == 1) {
+            // 写入成功，加入布隆过滤器
+            bloomFilter.add(RedisConstants.CACHE_USER_KEY, user.getId());
+            user.setIcon("");
+        } else {
+            user = query().select("id", "nick_name", "icon").eq("phone", phone).one();
+        }
+        UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);
+        cacheByPhone(phone, userDTO);
+        return userDTO;
     }
 }
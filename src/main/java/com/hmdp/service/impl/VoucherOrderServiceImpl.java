@@ -1,10 +1,55 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
+import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SeckillStockManager;
+import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.UserHolder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 
 /**
  * <p>
@@ -14,7 +59,379 @@ import org.springframework.stereotype.Service;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, VoucherOrder> implements IVoucherOrderService {
 
+    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
+
+    static {
+        SECKILL_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_SCRIPT.setLocation(new ClassPathResource("lua/seckill.lua"));
+        SECKILL_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 消息队列为空时阻塞等待的时间
+     */
+    private static final Duration READ_BLOCK = Duration.ofSeconds(2);
+    /**
+     * 其它消费者的消息超过这个时间没有确认，认为该消费者已经宕机，转交给本节点处理
+     */
+    private static final Duration CLAIM_IDLE = Duration.ofSeconds(60);
+    /**
+     * 检查pending-list的间隔
+     */
+    private static final long PENDING_CHECK_INTERVAL = 30_000L;
+
+    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "seckill-order");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private TransactionTemplate transactionTemplate;
+    @Resource
+    private RedisIdWorker redisIdWorker;
+    @Resource
+    private SeckillProperties seckillProperties;
+    @Resource
+    private SeckillStockManager stockManager;
+
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void init() {
+        createGroupIfAbsent();
+        SECKILL_ORDER_EXECUTOR.submit(new VoucherOrderHandler());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        SECKILL_ORDER_EXECUTOR.shutdown();
+    }
+
+    /**
+     * 秒杀下单：在redis中完成资格判断并写入消息队列，订单由后台线程异步写入数据库。
+     * 本节点已知售罄的优惠券直接返回
+     * @param voucherId 优惠券id
+     * @return 订单id
+     */
+    @Override
+    public Result seckillVoucher(Long voucherId) {
+        if (stockManager.isSoldOut(voucherId)) {
+            return Result.fail("库存不足");
+        }
+        Long userId = UserHolder.getUser().getId();
+        long orderId = redisIdWorker.nextSegmentId("order");
+        long now = System.currentTimeMillis();
+        SeckillProperties.Timeout timeout = seckillProperties.getTimeout();
+        long payDeadline = now + timeout.getPayTimeout().toMillis();
+        Long result = stringRedisTemplate.execute(SECKILL_SCRIPT,
+                Arrays.asList(SeckillStockManager.stockKey(voucherId),
+                        RedisConstants.SECKILL_TIME_KEY + voucherId,
+                        RedisConstants.SECKILL_ORDER_KEY + voucherId,
+                        RedisConstants.SECKILL_STREAM_KEY,
+                        RedisConstants.ORDER_TIMEOUT_KEY),
+                voucherId.toString(),
+                userId.toString(),
+                String.valueOf(orderId),
+                String.valueOf(now),
+                String.valueOf(payDeadline),
+                timeout.isEnabled() ? "1" : "0");
+        int code = result == null ? -1 : result.intValue();
+        switch (code) {
+            case 0:
+                return Result.ok(orderId);
+            case 1:
+                // 库存已经扣完，之后的请求在本节点直接返回
+                stockManager.markSoldOut(voucherId);
+                return Result.fail("库存不足");
+            case 2:
+                return Result.fail("不能重复下单");
+            case 3:
+                return Result.fail("秒杀尚未开始");
+            case 4:
+                return Result.fail("秒杀已经结束");
+            case 5:
+                return Result.fail("优惠券不存在");
+            default:
+                return Result.fail("下单失败");
+        }
+    }
+
+    private void createGroupIfAbsent() {
+        byte[] rawKey = stringRedisTemplate.getStringSerializer().serialize(RedisConstants.SECKILL_STREAM_KEY);
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands()
+                    .xGroupCreate(rawKey, RedisConstants.SECKILL_STREAM_GROUP, ReadOffset.from("0"), true));
+        } catch (Exception e) {
+            // 消费者组已经存在
+            log.debug("消费者组已存在: {}", RedisConstants.SECKILL_STREAM_GROUP);
+        }
+    }
+
+    /**
+     * 消费订单消息的后台任务。每个节点是消费者组中的一个消费者，
+     * 处理成功后才确认消息，确认后从stream中删除；定期处理pending-list，包括接管宕机节点长时间未确认的消息。
+     * 不用 XADD MAXLEN 裁剪stream：消费积压时近似裁剪会删掉还没有投递的订单
+     */
+    private class VoucherOrderHandler implements Runnable {
+
+        private final Consumer consumer = Consumer.from(RedisConstants.SECKILL_STREAM_GROUP, SystemConstants.NODE_ID);
+
+        private long lastPendingCheck;
+
+        @Override
+        public void run() {
+            // 攒批：凑满batchSize条，或者从收到第一条开始等待batchWait后写入
+            List<MapRecord<String, Object, Object>> buffer = new ArrayList<>();
+            long deadline = 0;
+            while (running) {
+                try {
+                    if (buffer.isEmpty() && System.currentTimeMillis() - lastPendingCheck >= PENDING_CHECK_INTERVAL) {
+                        handlePendingList();
+                    }
+                    int batchSize = seckillProperties.getOrder().getBatchSize();
+                    Duration block = buffer.isEmpty() ? READ_BLOCK
+                            : Duration.ofMillis(Math.max(1, deadline - System.currentTimeMillis()));
+                    List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().read(
+                            consumer,
+                            StreamReadOptions.empty().count(batchSize - buffer.size()).block(block),
+                            StreamOffset.create(RedisConstants.SECKILL_STREAM_KEY, ReadOffset.lastConsumed()));
+                    if (records != null && !records.isEmpty()) {
+                        if (buffer.isEmpty()) {
+                            deadline = System.currentTimeMillis() + seckillProperties.getOrder().getBatchWait().toMillis();
+                        }
+                        buffer.addAll(records);
+                    }
+                    if (!buffer.isEmpty()
+                            && (buffer.size() >= batchSize || System.currentTimeMillis() >= deadline)) {
+                        handleRecords(buffer);
+                        buffer.clear();
+                    }
+                } catch (Exception e) {
+                    log.error("处理订单异常", e);
+                    // 未确认的消息留在pending-list，稍后重试
+                    buffer.clear();
+                    lastPendingCheck = 0;
+                    sleepQuietly();
+                }
+            }
+        }
+
+        /**
+         * 接管其它消费者超时未确认的消息，然后处理自己pending-list中的全部消息
+         */
+        private void handlePendingList() {
+            claimIdleMessages();
+            ReadOffset offset = ReadOffset.from("0");
+            while (running) {
+                List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().read(
+                        consumer,
+                        StreamReadOptions.empty().count(seckillProperties.getOrder().getBatchSize()),
+                        StreamOffset.create(RedisConstants.SECKILL_STREAM_KEY, offset));
+                if (records == null || records.isEmpty()) {
+                    break;
+                }
+                // 处理失败的消息留在pending-list，从这一页之后继续读，下次检查时再重试
+                offset = ReadOffset.from(records.get(records.size() - 1).getId());
+                handlePendingRecords(records);
+            }
+            lastPendingCheck = System.currentTimeMillis();
+        }
+
+        /**
+         * 整批处理失败时逐条处理，只让有问题的消息留在pending-list；
+         * 投递次数达到上限仍然失败的消息转入死信队列并确认，不再无限重试。
+         * 数据库或redis不可用时直接抛出，不计入失败，避免短暂故障把整个队列转入死信
+         */
+        private void handlePendingRecords(List<MapRecord<String, Object, Object>> records) {
+            try {
+                handleRecords(records);
+                return;
+            } catch (RuntimeException e) {
+                if (isTransient(e)) {
+                    throw e;
+                }
+                log.warn("pending-list整批处理失败，改为逐条处理: {}", e.getMessage());
+            }
+            Map<RecordId, Long> deliveries = deliveryCounts(records);
+            int maxDeliveries = seckillProperties.getOrder().getMaxDeliveries();
+            for (MapRecord<String, Object, Object> record : records) {
+                try {
+                    handleRecords(Collections.singletonList(record));
+                } catch (RuntimeException e) {
+                    if (isTransient(e)) {
+                        throw e;
+                    }
+                    long delivered = deliveries.getOrDefault(record.getId(), 0L);
+                    if (delivered >= maxDeliveries) {
+                        deadLetter(record, e);
+                    } else {
+                        log.warn("订单消息处理失败，第{}次投递, id: {}", delivered, record.getId(), e);
+                    }
+                }
+            }
+        }
+
+        /**
+         * 本消费者pending-list中这些消息的投递次数，读取pending-list本身也会增加投递次数
+         */
+        private Map<RecordId, Long> deliveryCounts(List<MapRecord<String, Object, Object>> records) {
+            PendingMessages pending = stringRedisTemplate.opsForStream().pending(RedisConstants.SECKILL_STREAM_KEY,
+                    consumer, Range.closed(records.get(0).getId().getValue(),
+                            records.get(records.size() - 1).getId().getValue()), (long) records.size());
+            Map<RecordId, Long> deliveries = new HashMap<>(records.size() * 2);
+            for (PendingMessage message : pending) {
+                deliveries.put(message.getId(), message.getTotalDeliveryCount());
+            }
+            return deliveries;
+        }
+
+        /**
+         * 把消息写入死信队列，然后确认并删除。redis中的库存已经扣减，订单没有写入数据库，由对账任务发现并修复
+         */
+        private void deadLetter(MapRecord<String, Object, Object> record, Exception cause) {
+            Map<Object, Object> value = new LinkedHashMap<>(record.getValue());
+            value.put("sourceId", record.getId().getValue());
+            value.put("error", String.valueOf(cause));
+            stringRedisTemplate.opsForStream().add(RedisConstants.SECKILL_DEAD_LETTER_KEY, value);
+            acknowledge(record.getId());
+            log.error("订单消息多次处理失败，转入死信队列: {}", value, cause);
+        }
+
+        private void claimIdleMessages() {
+            PendingMessages pending = stringRedisTemplate.opsForStream().pending(RedisConstants.SECKILL_STREAM_KEY,
+                    RedisConstants.SECKILL_STREAM_GROUP, Range.unbounded(), 100L);
+            List<RecordId> idle = new ArrayList<>();
+            for (PendingMessage message : pending) {
+                if (!consumer.getName().equals(message.getConsumerName())
+                        && message.getElapsedTimeSinceLastDelivery().compareTo(CLAIM_IDLE) >= 0) {
+                    idle.add(message.getId());
+                }
+            }
+            if (idle.isEmpty()) {
+                return;
+            }
+            byte[] rawKey = stringRedisTemplate.getStringSerializer().serialize(RedisConstants.SECKILL_STREAM_KEY);
+            List<RecordId> claimed = stringRedisTemplate.execute((RedisCallback<List<RecordId>>) connection ->
+                    connection.streamCommands().xClaimJustId(rawKey, consumer.getGroup(), consumer.getName(),
+                            RedisStreamCommands.XClaimOptions.minIdle(CLAIM_IDLE).ids(idle)));
+            log.warn("接管其它消费者未确认的订单消息: {}", claimed);
+        }
+
+        /**
+         * 整批写入数据库，提交成功后再确认消息
+         */
+        private void handleRecords(List<MapRecord<String, Object, Object>> records) {
+            List<VoucherOrder> orders = new ArrayList<>(records.size());
+            RecordId[] recordIds = new RecordId[records.size()];
+            for (int i = 0; i < records.size(); i++) {
+                MapRecord<String, Object, Object> record = records.get(i);
+                orders.add(BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true));
+                recordIds[i] = record.getId();
+            }
+            createVoucherOrders(orders);
+            acknowledge(recordIds);
+        }
+
+        /**
+         * 确认消息后从stream中删除，避免已经处理的订单一直占用内存
+         */
+        private void acknowledge(RecordId... recordIds) {
+            stringRedisTemplate.opsForStream().acknowledge(RedisConstants.SECKILL_STREAM_KEY,
+                    RedisConstants.SECKILL_STREAM_GROUP, recordIds);
+            stringRedisTemplate.opsForStream().delete(RedisConstants.SECKILL_STREAM_KEY, recordIds);
+        }
+
+        private void sleepQuietly() {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+        }
+    }
+
+    /**
+     * 数据库或redis暂时不可用，稍后重试可能成功
+     */
+    private static boolean isTransient(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof TransientDataAccessException || t instanceof RecoverableDataAccessException
+                    || t instanceof DataAccessResourceFailureException || t instanceof CannotCreateTransactionException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 批量保存订单：一条多行INSERT写入订单，每个优惠券一条UPDATE扣减库存，在同一个事务中提交。
+     * 某个优惠券的数据库库存不足或者订单重复时整批回滚，改为逐条写入，只丢弃有问题的订单
+     * @param orders 订单
+     */
+    private void createVoucherOrders(List<VoucherOrder> orders) {
+        // 消息可能被重复投递，去掉已经写入的订单
+        Map<Long, VoucherOrder> unique = new LinkedHashMap<>(orders.size() * 2);
+        orders.forEach(order -> unique.putIfAbsent(order.getId(), order));
+        query().select("id").in("id", unique.keySet()).list()
+                .forEach(existing -> unique.remove(existing.getId()));
+        if (unique.isEmpty()) {
+            return;
+        }
+        List<VoucherOrder> batch = new ArrayList<>(unique.values());
+        Map<Long, Long> counts = batch.stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, Collectors.counting()));
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                getBaseMapper().insertBatch(batch);
+                for (Map.Entry<Long, Long> entry : counts.entrySet()) {
+                    boolean success = seckillVoucherService.update()
+                            .setSql("stock = stock - " + entry.getValue())
+                            .eq("voucher_id", entry.getKey())
+                            .ge("stock", entry.getValue())
+                            .update();
+                    if (!success) {
+                        throw new IllegalStateException("数据库库存不足, voucherId: " + entry.getKey());
+                    }
+                }
+            });
+        } catch (DuplicateKeyException | IllegalStateException e) {
+            log.warn("批量写入订单失败，改为逐条写入: {}", e.getMessage());
+            batch.forEach(this::createVoucherOrder);
+        }
+    }
+
+    /**
+     * 保存订单并扣减数据库库存。消息可能被重复投递，订单id已存在时直接跳过
+     * @param voucherOrder 订单
+     */
+    private void createVoucherOrder(VoucherOrder voucherOrder) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                save(voucherOrder);
+                boolean success = seckillVoucherService.update()
+                        .setSql("stock = stock - 1")
+                        .eq("voucher_id", voucherOrder.getVoucherId())
+                        .gt("stock", 0)
+                        .update();
+                if (!success) {
+                    // redis和数据库库存不一致，放弃该订单，由对账任务修复
+                    log.error("数据库库存不足，订单作废: {}", voucherOrder);
+                    status.setRollbackOnly();
+                }
+            });
+        } catch (DuplicateKeyException e) {
+            log.info("订单已经处理过: {}", voucherOrder.getId());
+        }
+    }
 }
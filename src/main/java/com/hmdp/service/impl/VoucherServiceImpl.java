@@ -1,5 +1,6 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Voucher;
@@ -7,11 +8,19 @@ import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.SeckillStockManager;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * <p>
@@ -26,15 +35,57 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
 
     @Resource
     private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private SeckillStockManager stockManager;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
 
+    /**
+     * 查询店铺的优惠券列表。优惠券信息按店铺缓存，秒杀券的库存在读取时从redis中的库存计数覆盖
+     * @param shopId 店铺id
+     * @return 优惠券列表
+     */
     @Override
     public Result queryVoucherOfShop(Long shopId) {
-        // 查询优惠券信息
-        List<Voucher> vouchers = getBaseMapper().queryVoucherOfShop(shopId);
+        // 1.从缓存中查询优惠券列表
+        String key = RedisConstants.CACHE_VOUCHER_LIST_KEY + shopId;
+        String json = stringRedisTemplate.opsForValue().get(key);
+        List<Voucher> vouchers;
+        if (json != null) {
+            vouchers = JSONUtil.toList(json, Voucher.class);
+        } else {
+            // 2.不存在，查询数据库并写入缓存，没有优惠券的店铺缓存空列表
+            vouchers = getBaseMapper().queryVoucherOfShop(shopId);
+            stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(vouchers),
+                    RedisConstants.CACHE_VOUCHER_LIST_TTL, TimeUnit.MINUTES);
+        }
+        // 3.秒杀券的库存使用redis中的实时库存
+        List<Long> seckillIds = vouchers.stream()
+                .filter(voucher -> voucher.getStock() != null)
+                .map(Voucher::getId)
+                .collect(Collectors.toList());
+        if (!seckillIds.isEmpty()) {
+            Map<Long, Integer> stocks = stockManager.getStocks(seckillIds);
+            vouchers.forEach(voucher -> {
+                Integer stock = stocks.get(voucher.getId());
+                if (stock != null) {
+                    voucher.setStock(stock);
+                }
+            });
+        }
         // 返回结果
         return Result.ok(vouchers);
     }
 
+    @Override
+    @Transactional
+    public void addVoucher(Voucher voucher) {
+        // 保存优惠券
+        save(voucher);
+        // 事务提交后删除店铺的优惠券列表缓存，避免提交前被其它请求用旧数据重建
+        afterCommit(() -> stringRedisTemplate.delete(RedisConstants.CACHE_VOUCHER_LIST_KEY + voucher.getShopId()));
+    }
+
     @Override
     @Transactional
     public void addSeckillVoucher(Voucher voucher) {
@@ -47,5 +98,27 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
+        // 事务提交后再把库存和秒杀时间写入redis并删除店铺的优惠券列表缓存，
+        // 回滚时redis中不会留下数据库里不存在的优惠券
+        afterCommit(() -> {
+            stockManager.publish(seckillVoucher, true);
+            stringRedisTemplate.delete(RedisConstants.CACHE_VOUCHER_LIST_KEY + voucher.getShopId());
+        });
+    }
+
+    /**
+     * 在当前事务提交后执行，没有事务时立即执行
+     */
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 }
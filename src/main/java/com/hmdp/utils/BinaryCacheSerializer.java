@@ -0,0 +1,571 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.ReflectUtil;
+import cn.hutool.json.JSONUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 紧凑的二进制序列化。按类型的字段结构(schema)直接读写字段，不经过中间的JSON对象；
+ * 字段名不写入数据，只写入结构指纹，结构发生变化时读取失败，由 CacheClient 当作未命中处理。
+ * <p>
+ * 格式: 魔数(1) 版本(1) 类型(1) [逻辑过期时间 重建耗时] 对象
+ * 对象: 结构指纹(4) 空值位图 非空字段依次写入
+ * <p>
+ * 版本1没有重建耗时，仍然可以读取，重建后写入的是当前版本
+ */
+public class BinaryCacheSerializer implements CacheSerializer {
+
+    /**
+     * 魔数，JSON数据不可能以这个字节开头，用于区分新旧两种格式
+     */
+    public static final byte MAGIC = (byte) 0xCB;
+
+    private static final byte VERSION = 2;
+    /**
+     * 能读取的最早版本
+     */
+    private static final byte MIN_VERSION = 1;
+    private static final byte KIND_VALUE = 0;
+    private static final byte KIND_EXPIRE = 1;
+
+    private static final Map<Class<?>, Codec> SIMPLE_CODECS = new HashMap<>();
+
+    private final ConcurrentMap<Class<?>, Codec> beanCodecs = new ConcurrentHashMap<>();
+
+    @Override
+    public byte[] serialize(Object value) {
+        Output out = new Output();
+        writeHeader(out, KIND_VALUE);
+        codec(value.getClass()).write(out, value);
+        return out.toByteArray();
+    }
+
+    @Override
+    public <T> T deserialize(byte[] bytes, Class<T> type) {
+        Input in = new Input(bytes);
+        readHeader(in, KIND_VALUE);
+        return type.cast(codec(type).read(in));
+    }
+
+    @Override
+    public byte[] serializeWithExpire(RedisData redisData) {
+        Output out = new Output();
+        writeHeader(out, KIND_EXPIRE);
+        LOCAL_DATE_TIME.write(out, redisData.getExpireTime());
+        Long rebuildCost = redisData.getRebuildCost();
+        out.writeVarLong(rebuildCost == null ? -1 : rebuildCost);
+        Object data = redisData.getData();
+        out.write(data == null ? 0 : 1);
+        if (data != null) {
+            codec(data.getClass()).write(out, data);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public RedisData deserializeWithExpire(byte[] bytes, Class<?> type) {
+        Input in = new Input(bytes);
+        byte version = readHeader(in, KIND_EXPIRE);
+        LocalDateTime expireTime = (LocalDateTime) LOCAL_DATE_TIME.read(in);
+        // 版本1没有记录重建耗时
+        long rebuildCost = version >= 2 ? in.readVarLong() : -1;
+        Object data = in.readByte() == 0 ? null : codec(type).read(in);
+        return RedisData.builder()
+                .expireTime(expireTime)
+                .rebuildCost(rebuildCost < 0 ? null : rebuildCost)
+                .data(data)
+                .build();
+    }
+
+    @Override
+    public boolean canRead(byte[] bytes) {
+        return bytes.length > 0 && bytes[0] == MAGIC;
+    }
+
+    private void writeHeader(Output out, byte kind) {
+        out.write(MAGIC);
+        out.write(VERSION);
+        out.write(kind);
+    }
+
+    /**
+     * @return 数据的格式版本
+     */
+    private byte readHeader(Input in, byte kind) {
+        if (in.readByte() != MAGIC) {
+            throw new IllegalStateException("不支持的缓存数据格式");
+        }
+        byte version = in.readByte();
+        if (version < MIN_VERSION || version > VERSION || in.readByte() != kind) {
+            throw new IllegalStateException("不支持的缓存数据格式, 版本: " + version);
+        }
+        return version;
+    }
+
+    private Codec codec(Class<?> type) {
+        Codec codec = SIMPLE_CODECS.get(type);
+        if (codec != null) {
+            return codec;
+        }
+        if (type.isEnum()) {
+            return new EnumCodec(type);
+        }
+        if (!isBean(type)) {
+            // 集合等类型只能作为字段，顶层没有泛型信息
+            throw new IllegalArgumentException("不支持的缓存类型: " + type.getName());
+        }
+        codec = beanCodecs.get(type);
+        if (codec == null) {
+            // 字段的编解码器在第一次使用时才解析，这里不会递归构建，可以安全地 putIfAbsent
+            Codec created = new BeanCodec(type);
+            codec = beanCodecs.putIfAbsent(type, created);
+            if (codec == null) {
+                codec = created;
+            }
+        }
+        return codec;
+    }
+
+    private static boolean isBean(Class<?> type) {
+        return !type.isPrimitive() && !type.isArray() && !type.isInterface() && !type.isEnum()
+                && !Modifier.isAbstract(type.getModifiers())
+                && !type.getName().startsWith("java.");
+    }
+
+    /**
+     * 单个类型的编解码器
+     */
+    private interface Codec {
+        void write(Output out, Object value);
+
+        Object read(Input in);
+    }
+
+    /**
+     * 普通Java对象，按字段名排序后依次读写
+     */
+    private final class BeanCodec implements Codec {
+        private final Class<?> type;
+        private final FieldSlot[] slots;
+        private final int fingerprint;
+
+        BeanCodec(Class<?> type) {
+            this.type = type;
+            List<FieldSlot> list = new ArrayList<>();
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    list.add(new FieldSlot(field));
+                }
+            }
+            list.sort(Comparator.comparing(slot -> slot.field.getName()));
+            this.slots = list.toArray(new FieldSlot[0]);
+
+            StringBuilder schema = new StringBuilder(type.getName());
+            for (FieldSlot slot : slots) {
+                schema.append(';').append(slot.field.getName()).append(':').append(slot.field.getGenericType().getTypeName());
+            }
+            this.fingerprint = schema.toString().hashCode();
+        }
+
+        @Override
+        public void write(Output out, Object value) {
+            out.writeInt(fingerprint);
+            Object[] values = new Object[slots.length];
+            byte[] nullBits = new byte[(slots.length + 7) >>> 3];
+            for (int i = 0; i < slots.length; i++) {
+                values[i] = slots[i].get(value);
+                if (values[i] == null) {
+                    nullBits[i >>> 3] |= (byte) (1 << (i & 7));
+                }
+            }
+            out.write(nullBits, 0, nullBits.length);
+            for (int i = 0; i < slots.length; i++) {
+                if (values[i] != null) {
+                    slots[i].codec().write(out, values[i]);
+                }
+            }
+        }
+
+        @Override
+        public Object read(Input in) {
+            if (in.readInt() != fingerprint) {
+                throw new IllegalStateException("缓存数据的结构与" + type.getSimpleName() + "不一致");
+            }
+            Object bean = ReflectUtil.newInstanceIfPossible(type);
+            if (bean == null) {
+                throw new IllegalStateException("无法实例化" + type.getName());
+            }
+            byte[] nullBits = in.readBytes((slots.length + 7) >>> 3);
+            for (int i = 0; i < slots.length; i++) {
+                if ((nullBits[i >>> 3] & (1 << (i & 7))) == 0) {
+                    slots[i].set(bean, slots[i].codec().read(in));
+                }
+            }
+            return bean;
+        }
+    }
+
+    private final class FieldSlot {
+        private final Field field;
+        private volatile Codec codec;
+
+        FieldSlot(Field field) {
+            this.field = field;
+        }
+
+        Codec codec() {
+            Codec c = codec;
+            if (c == null) {
+                Class<?> type = field.getType();
+                if (SIMPLE_CODECS.containsKey(type) || type.isEnum() || isBean(type)) {
+                    c = BinaryCacheSerializer.this.codec(type);
+                } else {
+                    // 集合等其它类型退化为JSON，保留泛型信息
+                    c = new JsonCodec(field.getGenericType());
+                }
+                codec = c;
+            }
+            return c;
+        }
+
+        Object get(Object bean) {
+            try {
+                return field.get(bean);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void set(Object bean, Object value) {
+            try {
+                field.set(bean, value);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static final class EnumCodec implements Codec {
+        private final Class<?> type;
+
+        EnumCodec(Class<?> type) {
+            this.type = type;
+        }
+
+        @Override
+        public void write(Output out, Object value) {
+            out.writeString(((Enum<?>) value).name());
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public Object read(Input in) {
+            return Enum.valueOf((Class<Enum>) type, in.readString());
+        }
+    }
+
+    private static final class JsonCodec implements Codec {
+        private final Type type;
+
+        JsonCodec(Type type) {
+            this.type = type;
+        }
+
+        @Override
+        public void write(Output out, Object value) {
+            out.writeString(JSONUtil.toJsonStr(value));
+        }
+
+        @Override
+        public Object read(Input in) {
+            return JSONUtil.toBean(in.readString(), type, false);
+        }
+    }
+
+    private static final Codec LOCAL_DATE_TIME = new Codec() {
+        @Override
+        public void write(Output out, Object value) {
+            LocalDateTime time = (LocalDateTime) value;
+            out.writeVarLong(time.toEpochSecond(ZoneOffset.UTC));
+            out.writeVarLong(time.getNano());
+        }
+
+        @Override
+        public Object read(Input in) {
+            return LocalDateTime.ofEpochSecond(in.readVarLong(), (int) in.readVarLong(), ZoneOffset.UTC);
+        }
+    };
+
+    static {
+        Codec longCodec = new Codec() {
+            @Override
+            public void write(Output out, Object value) {
+                out.writeVarLong((Long) value);
+            }
+
+            @Override
+            public Object read(Input in) {
+                return in.readVarLong();
+            }
+        };
+        Codec intCodec = new Codec() {
+            @Override
+            public void write(Output out, Object value) {
+                out.writeVarLong((Integer) value);
+            }
+
+            @Override
+            public Object read(Input in) {
+                return (int) in.readVarLong();
+            }
+        };
+        Codec shortCodec = new Codec() {
+            @Override
+            public void write(Output out, Object value) {
+                out.writeVarLong((Short) value);
+            }
+
+            @Override
+            public Object read(Input in) {
+                return (short) in.readVarLong();
+            }
+        };
+        Codec byteCodec = new Codec() {
+            @Override
+            public void write(Output out, Object value) {
+                out.write((Byte) value);
+            }
+
+            @Override
+            public Object read(Input in) {
+                return in.readByte();
+            }
+        };
+        Codec booleanCodec = new Codec() {
+            @Override
+            public void write(Output out, Object value) {
+                out.write((Boolean) value ? 1 : 0);
+            }
+
+            @Override
+            public Object read(Input in) {
+                return in.readByte() != 0;
+            }
+        };
+        Codec doubleCodec = new Codec() {
+            @Override
+            public void write(Output out, Object value) {
+                out.writeLong(Double.doubleToLongBits((Double) value));
+            }
+
+            @Override
+            public Object read(Input in) {
+                return Double.longBitsToDouble(in.readLong());
+            }
+        };
+        Codec floatCodec = new Codec() {
+            @Override
+            public void write(Output out, Object value) {
+                out.writeInt(Float.floatToIntBits((Float) value));
+            }
+
+            @Override
+            public Object read(Input in) {
+                return Float.intBitsToFloat(in.readInt());
+            }
+        };
+        Codec charCodec = new Codec() {
+            @Override
+            public void write(Output out, Object value) {
+                out.writeVarLong((Character) value);
+            }
+
+            @Override
+            public Object read(Input in) {
+                return (char) in.readVarLong();
+            }
+        };
+        Codec stringCodec = new Codec() {
+            @Override
+            public void write(Output out, Object value) {
+                out.writeString((String) value);
+            }
+
+            @Override
+            public Object read(Input in) {
+                return in.readString();
+            }
+        };
+        Codec bigDecimalCodec = new Codec() {
+            @Override
+            public void write(Output out, Object value) {
+                out.writeString(((BigDecimal) value).toString());
+            }
+
+            @Override
+            public Object read(Input in) {
+                return new BigDecimal(in.readString());
+            }
+        };
+        Codec localDateCodec = new Codec() {
+            @Override
+            public void write(Output out, Object value) {
+                out.writeVarLong(((LocalDate) value).toEpochDay());
+            }
+
+            @Override
+            public Object read(Input in) {
+                return LocalDate.ofEpochDay(in.readVarLong());
+            }
+        };
+        Codec dateCodec = new Codec() {
+            @Override
+            public void write(Output out, Object value) {
+                out.writeVarLong(((Date) value).getTime());
+            }
+
+            @Override
+            public Object read(Input in) {
+                return new Date(in.readVarLong());
+            }
+        };
+
+        SIMPLE_CODECS.put(Long.class, longCodec);
+        SIMPLE_CODECS.put(long.class, longCodec);
+        SIMPLE_CODECS.put(Integer.class, intCodec);
+        SIMPLE_CODECS.put(int.class, intCodec);
+        SIMPLE_CODECS.put(Short.class, shortCodec);
+        SIMPLE_CODECS.put(short.class, shortCodec);
+        SIMPLE_CODECS.put(Byte.class, byteCodec);
+        SIMPLE_CODECS.put(byte.class, byteCodec);
+        SIMPLE_CODECS.put(Boolean.class, booleanCodec);
+        SIMPLE_CODECS.put(boolean.class, booleanCodec);
+        SIMPLE_CODECS.put(Double.class, doubleCodec);
+        SIMPLE_CODECS.put(double.class, doubleCodec);
+        SIMPLE_CODECS.put(Float.class, floatCodec);
+        SIMPLE_CODECS.put(float.class, floatCodec);
+        SIMPLE_CODECS.put(Character.class, charCodec);
+        SIMPLE_CODECS.put(char.class, charCodec);
+        SIMPLE_CODECS.put(String.class, stringCodec);
+        SIMPLE_CODECS.put(BigDecimal.class, bigDecimalCodec);
+        SIMPLE_CODECS.put(LocalDate.class, localDateCodec);
+        SIMPLE_CODECS.put(LocalDateTime.class, LOCAL_DATE_TIME);
+        SIMPLE_CODECS.put(Date.class, dateCodec);
+    }
+
+    private static final class Output extends ByteArrayOutputStream {
+
+        Output() {
+            super(128);
+        }
+
+        void writeInt(int v) {
+            write(v >>> 24);
+            write(v >>> 16);
+            write(v >>> 8);
+            write(v);
+        }
+
+        void writeLong(long v) {
+            writeInt((int) (v >>> 32));
+            writeInt((int) v);
+        }
+
+        /**
+         * zigzag + 变长编码，小的正负数都只占1~2个字节
+         */
+        void writeVarLong(long v) {
+            long zigzag = (v << 1) ^ (v >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                write((int) ((zigzag & 0x7F) | 0x80));
+                zigzag >>>= 7;
+            }
+            write((int) zigzag);
+        }
+
+        void writeString(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+    }
+
+    private static final class Input {
+        private final byte[] buf;
+        private int pos;
+
+        Input(byte[] buf) {
+            this.buf = buf;
+        }
+
+        byte readByte() {
+            if (pos >= buf.length) {
+                throw new IllegalStateException("缓存数据不完整");
+            }
+            return buf[pos++];
+        }
+
+        byte[] readBytes(int length) {
+            if (pos + length > buf.length) {
+                throw new IllegalStateException("缓存数据不完整");
+            }
+            byte[] bytes = Arrays.copyOfRange(buf, pos, pos + length);
+            pos += length;
+            return bytes;
+        }
+
+        int readInt() {
+            return ((readByte() & 0xFF) << 24) | ((readByte() & 0xFF) << 16)
+                    | ((readByte() & 0xFF) << 8) | (readByte() & 0xFF);
+        }
+
+        long readLong() {
+            return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+        }
+
+        long readVarLong() {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = readByte();
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        String readString() {
+            int length = (int) readVarLong();
+            if (length < 0 || pos + length > buf.length) {
+                throw new IllegalStateException("缓存数据不完整");
+            }
+            String s = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return s;
+        }
+    }
+}
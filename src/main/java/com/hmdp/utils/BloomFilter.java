@@ -0,0 +1,117 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * JVM内的布隆过滤器，线程安全，只能添加不能删除。
+ * 位的排列方式与redis的bitmap一致，可以直接与redis中的bitmap互相导入导出
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray words;
+    private final long numBits;
+    private final int numHashes;
+
+    private BloomFilter(long numBits, int numHashes) {
+        this.numBits = numBits;
+        this.numHashes = numHashes;
+        this.words = new AtomicLongArray((int) ((numBits + 63) >>> 6));
+    }
+
+    /**
+     * 根据预计元素数量和误判率计算位数和哈希次数
+     * @param expectedInsertions 预计元素数量
+     * @param fpp 误判率
+     * @return 布隆过滤器
+     */
+    public static BloomFilter create(long expectedInsertions, double fpp) {
+        long n = Math.max(expectedInsertions, 1);
+        long numBits = (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        // bitmap按字节存储，位数对齐到8的倍数
+        numBits = Math.max(64, (numBits + 7) & ~7L);
+        int numHashes = Math.max(1, (int) Math.round((double) numBits / n * Math.log(2)));
+        return new BloomFilter(numBits, numHashes);
+    }
+
+    public long numBits() {
+        return numBits;
+    }
+
+    public int numHashes() {
+        return numHashes;
+    }
+
+    /**
+     * 计算元素对应的所有位的下标
+     * @param value 元素
+     * @return 位下标
+     */
+    public long[] indexes(String value) {
+        // 双重哈希：用一次128位哈希的两部分模拟k个哈希函数
+        long[] hash = MurmurHash.hash128(value);
+        long[] indexes = new long[numHashes];
+        long combined = hash[0];
+        for (int i = 0; i < numHashes; i++) {
+            indexes[i] = (combined & Long.MAX_VALUE) % numBits;
+            combined += hash[1];
+        }
+        return indexes;
+    }
+
+    public void add(String value) {
+        for (long index : indexes(value)) {
+            setBit(index);
+        }
+    }
+
+    public boolean mightContain(String value) {
+        for (long index : indexes(value)) {
+            if (!getBit(index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void setBit(long index) {
+        int word = (int) (index >>> 6);
+        long mask = 1L << (63 - (index & 63));
+        long old;
+        do {
+            old = words.get(word);
+            if ((old & mask) != 0) {
+                return;
+            }
+        } while (!words.compareAndSet(word, old, old | mask));
+    }
+
+    public boolean getBit(long index) {
+        return (words.get((int) (index >>> 6)) & (1L << (63 - (index & 63)))) != 0;
+    }
+
+    /**
+     * 合并redis中bitmap的内容(按位或)
+     * @param bitmap redis中bitmap的字节，第一个字节的最高位是第0位
+     */
+    public void merge(byte[] bitmap) {
+        int length = (int) Math.min(bitmap.length, numBits >>> 3);
+        for (int i = 0; i < length; i += 8) {
+            long word = 0;
+            for (int j = 0; j < 8; j++) {
+                word <<= 8;
+                if (i + j < length) {
+                    word |= bitmap[i + j] & 0xFF;
+                }
+            }
+            if (word != 0) {
+                int index = i >>> 3;
+                long old;
+                do {
+                    old = words.get(index);
+                } while (!words.compareAndSet(index, old, old | word));
+            }
+        }
+    }
+}
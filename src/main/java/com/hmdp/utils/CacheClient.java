@@ -1,22 +1,32 @@
 package com.hmdp.utils;
 
-import cn.hutool.core.lang.UUID;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.config.CacheProperties;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * 缓存Redis的工具类
@@ -28,31 +38,76 @@ public class CacheClient{
 
     private final StringRedisTemplate stringRedisTemplate;
 
+    private final NearCache nearCache;
+
+    private final RedisBloomFilter bloomFilter;
+
+    private final CacheRebuildExecutor rebuildExecutor;
+
+    private final DistributedLock distributedLock;
+
+    /**
+     * 合并同一个key上并发的缓存未命中，避免相同的查询同时打到数据库
+     */
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    /**
+     * 空值占位，缓存"数据不存在"的结果
+     */
+    private static final byte[] NULL_BYTES = new byte[0];
+
+    private final CacheSerializer jsonSerializer = new JsonCacheSerializer();
+    private final CacheSerializer binarySerializer = new BinaryCacheSerializer();
+
+    /**
+     * 按key前缀配置的序列化方式，前缀越长越优先匹配
+     */
+    private final Map<String, CacheSerializer> prefixSerializers = new LinkedHashMap<>();
+    private final CacheSerializer defaultSerializer;
+    private final boolean readLegacyJson;
+
+    private final CacheProperties.EarlyRefresh earlyRefresh;
+
     @Autowired
-    public CacheClient(StringRedisTemplate stringRedisTemplate) {
+    public CacheClient(StringRedisTemplate stringRedisTemplate,
+                       NearCache nearCache,
+                       RedisBloomFilter bloomFilter,
+                       CacheRebuildExecutor rebuildExecutor,
+                       DistributedLock distributedLock,
+                       CacheProperties cacheProperties) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.nearCache = nearCache;
+        this.bloomFilter = bloomFilter;
+        this.rebuildExecutor = rebuildExecutor;
+        this.distributedLock = distributedLock;
+
+        CacheProperties.Serializer properties = cacheProperties.getSerializer();
+        this.defaultSerializer = serializerOf(properties.getDefaultType());
+        this.readLegacyJson = properties.isReadLegacyJson();
+        this.earlyRefresh = cacheProperties.getEarlyRefresh();
+        properties.getPrefixes().entrySet().stream()
+                .sorted(Comparator.comparing((Map.Entry<String, CacheProperties.SerializerType> e) -> e.getKey().length()).reversed())
+                .forEach(e -> prefixSerializers.put(e.getKey(), serializerOf(e.getValue())));
     }
 
     /**
-     * 将任意对象序列化成Json对象并存储到String类型的key中，并且可以设置TTL过期时间
+     * 将任意对象序列化并存储到String类型的key中，并且可以设置TTL过期时间
      * @param key redis中的key
-     * @param value redis中的value，也就是转换成Json的对象
+     * @param value redis中的value，按key前缀配置的方式序列化
      * @param time 过期时间
      * @param timeUnit 时间单位
      */
     public void saveObject2Redis(String key, Object value, Long time, TimeUnit timeUnit) {
         // 存储到String类型的key中, 并设置TTL
-        stringRedisTemplate.opsForValue().set(key,
-                JSONUtil.toJsonStr(value),
-                time,
-                timeUnit);
+        setRaw(key, serializerFor(key).serialize(value), time, timeUnit);
+        nearCache.evict(key);
     }
 
 
     /**
-     * 将任意对象序列化成Json对象并存储到String类型的key中，并且可以设置逻辑过期时间
+     * 将任意对象序列化并存储到String类型的key中，并且可以设置逻辑过期时间
      * @param key redis中的key
-     * @param value redis中的value，也就是转换成Json的对象
+     * @param value redis中的value，按key前缀配置的方式序列化
      * @param time 过期时间
      * @param timeUnit 时间单位
      */
@@ -63,7 +118,8 @@ public class CacheClient{
                 .expireTime(LocalDateTime.now().plusSeconds(timeUnit.toSeconds(time)))
                 .build();
 
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        setRaw(key, serializerFor(key).serializeWithExpire(redisData), null, null);
+        nearCache.evict(key);
     }
 
 
@@ -84,44 +140,154 @@ public class CacheClient{
                                           Long time,
                                           TimeUnit timeUnit) {
         String key = keyPrefix + id;
+        // 0.布隆过滤器判断id一定不存在，直接返回，不访问redis和数据库
+        if (!bloomFilter.mightContain(keyPrefix, id)) {
+            return null;
+        }
+        // 先查询本地缓存，命中则不需要访问redis
+        Object local = nearCache.get(keyPrefix, key);
+        if (local != null) {
+            return local == NearCache.NULL_VALUE ? null : type.cast(local);
+        }
+
         // 1.在redis中更加key查询数据
-        String objectJson = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = getRaw(key);
         // 2.判断是否存在
-        if (StrUtil.isNotBlank(objectJson)) {
-            // 3.存在，直接返回查询结果
-            return JSONUtil.toBean(objectJson, type);
+        if (bytes != null && bytes.length > 0) {
+            // 3.存在，写入本地缓存并返回查询结果；无法解析的旧数据按未命中处理
+            R r = read(key, bytes, serializer -> serializer.deserialize(bytes, type));
+            if (r != null) {
+                nearCache.put(keyPrefix, key, r);
+                return r;
+            }
         }
 
         // 4.不存在, 判断是否命中空值
-        if (StrUtil.equals("", objectJson)) {
+        if (bytes != null && bytes.length == 0) {
             // 命中空值，返回null
+            nearCache.put(keyPrefix, key, null);
             return null;
         }
 
-        // 5.不存在， 根据id查询数据库
-        R r = dbFallback.apply(id);
+        // 5.不存在， 同一个key的并发未命中只由一个线程查询数据库并写回redis
+        return singleFlight.execute(key, () -> {
+            // 5.1 上一轮加载刚刚结束时进来的线程，直接使用它写入的本地缓存
+            Object loaded = nearCache.get(keyPrefix, key);
+            if (loaded != null) {
+                return loaded == NearCache.NULL_VALUE ? null : type.cast(loaded);
+            }
 
-        // 6.判断r是否存在
-        // 6.1 不存在， 缓存空值,并返回null
-        if (r == null) {
-            stringRedisTemplate.opsForValue().set(key,
-                    "",
-                    time,
-                    timeUnit);
-            return null;
-        }
+            // 5.2 根据id查询数据库
+            R r = dbFallback.apply(id);
 
-        // 6.2 存在， 缓存查询到的对象
-        stringRedisTemplate.opsForValue().set(key,
-                JSONUtil.toJsonStr(r),
-                time,
-                timeUnit);
+            // 6.判断r是否存在
+            // 6.1 不存在， 缓存空值,并返回null
+            if (r == null) {
+                setRaw(key, NULL_BYTES, time, timeUnit);
+                nearCache.put(keyPrefix, key, null);
+                return null;
+            }
 
-        return r;
+            // 6.2 存在， 缓存查询到的对象
+            setRaw(key, serializerFor(key).serialize(r), time, timeUnit);
+            nearCache.put(keyPrefix, key, r);
+
+            return r;
+        });
     }
 
-    private static final ExecutorService executorService = Executors.newFixedThreadPool(10);
+    /**
+     * 批量查询缓存，一次MGET查询所有key，未命中的部分通过一次批量sql查询，再用一次pipeline写回redis
+     * @param keyPrefix key的前缀名称
+     * @param ids 查询对象的id集合
+     * @param type 返回对象的类型
+     * @param dbFallback 批量查询数据库的逻辑，返回 id -> 对象 的映射，不存在的id不需要放入
+     * @param time 过期时间
+     * @param timeUnit 时间单位
+     * @return id -> 对象 的映射，不存在的id不包含在结果中
+     * @param <R> 返回类型的泛型
+     * @param <ID> id的类型的泛型
+     */
+    public <R, ID> Map<ID, R> queryBatch(String keyPrefix,
+                                         Collection<ID> ids,
+                                         Class<R> type,
+                                         Function<Collection<ID>, Map<ID, R>> dbFallback,
+                                         Long time,
+                                         TimeUnit timeUnit) {
+        Map<ID, R> result = new LinkedHashMap<>();
+        if (ids == null || ids.isEmpty()) {
+            return result;
+        }
+
+        // 1.过滤掉一定不存在的id，再查询本地缓存
+        List<ID> remoteIds = new ArrayList<>();
+        for (ID id : new LinkedHashSet<>(ids)) {
+            if (!bloomFilter.mightContain(keyPrefix, id)) {
+                continue;
+            }
+            Object local = nearCache.get(keyPrefix, keyPrefix + id);
+            if (local == null) {
+                remoteIds.add(id);
+            } else if (local != NearCache.NULL_VALUE) {
+                result.put(id, type.cast(local));
+            }
+        }
+        if (remoteIds.isEmpty()) {
+            return result;
+        }
+
+        // 2.一次MGET查询redis
+        List<String> keys = remoteIds.stream().map(id -> keyPrefix + id).collect(Collectors.toList());
+        byte[][] rawKeys = keys.stream().map(this::rawKey).toArray(byte[][]::new);
+        List<byte[]> values = stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.mGet(rawKeys));
+        List<ID> missIds = new ArrayList<>();
+        for (int i = 0; i < remoteIds.size(); i++) {
+            ID id = remoteIds.get(i);
+            String key = keys.get(i);
+            byte[] bytes = values == null ? null : values.get(i);
+            R r = null;
+            if (bytes != null && bytes.length > 0) {
+                r = read(key, bytes, serializer -> serializer.deserialize(bytes, type));
+            }
+            if (r != null) {
+                nearCache.put(keyPrefix, key, r);
+                result.put(id, r);
+            } else if (bytes != null && bytes.length == 0) {
+                // 命中空值
+                nearCache.put(keyPrefix, key, null);
+            } else {
+                missIds.add(id);
+            }
+        }
+        if (missIds.isEmpty()) {
+            return result;
+        }
 
+        // 3.未命中的id一次查询数据库
+        Map<ID, R> loaded = dbFallback.apply(missIds);
+
+        // 4.用一次pipeline写回redis，数据库中不存在的id缓存空值
+        Expiration expiration = Expiration.from(time, timeUnit);
+        CacheSerializer serializer = serializerFor(keyPrefix);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (ID id : missIds) {
+                R r = loaded == null ? null : loaded.get(id);
+                connection.set(rawKey(keyPrefix + id),
+                        r == null ? NULL_BYTES : serializer.serialize(r),
+                        expiration,
+                        RedisStringCommands.SetOption.upsert());
+            }
+            return null;
+        });
+        for (ID id : missIds) {
+            R r = loaded == null ? null : loaded.get(id);
+            nearCache.put(keyPrefix, keyPrefix + id, r);
+            if (r != null) {
+                result.put(id, r);
+            }
+        }
+        return result;
+    }
 
     /**
      * 通过逻辑过期解决缓存击穿
@@ -142,100 +308,271 @@ public class CacheClient{
                                             Long time,
                                             TimeUnit timeUnit){
         String key = keyPrefix + id;
+        // 0.布隆过滤器判断id一定不存在，直接返回
+        if (!bloomFilter.mightContain(keyPrefix, id)) {
+            return null;
+        }
+        // 先查询本地缓存，本地缓存中只保存未过期的数据
+        Object local = nearCache.get(keyPrefix, key);
+        if (local instanceof RedisData) {
+            RedisData localData = (RedisData) local;
+            if (localData.getExpireTime().isAfter(LocalDateTime.now())) {
+                if (shouldRefreshEarly(localData)) {
+                    rebuildAsync(key, id, type, dbFallback, time, timeUnit, localData.getExpireTime());
+                }
+                return type.cast(localData.getData());
+            }
+        }
+
         // 1.查询redis数据库
-        String objectJson = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = getRaw(key);
         // 2.判断是否命中
-        if (StrUtil.isBlank(objectJson)) {
-            // 2.1 未命中，直接返回null
+        if (bytes == null) {
+            // 2.1 未命中：数据更新后删除了缓存，或者是新增的数据，查询数据库并写入逻辑过期数据
+            return loadWithLogicalExpire(key, id, dbFallback, time, timeUnit);
+        }
+        if (bytes.length == 0) {
+            // 2.2 命中空值，数据库中不存在
             return null;
         }
 
-        // 命中， 判断是否逻辑过期
-        RedisData redisData = JSONUtil.toBean(objectJson, RedisData.class);
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
-        LocalDateTime expireTime = redisData.getExpireTime();
-
-        if (expireTime.isAfter(LocalDateTime.now())) {
-            // 未过期， 返回查询结果
-            return r;
+        // 命中， 判断是否逻辑过期；无法解析的数据没有可以返回的旧数据，和未命中一样处理
+        RedisData redisData = read(key, bytes, serializer -> serializer.deserializeWithExpire(bytes, type));
+        if (redisData == null) {
+            return loadWithLogicalExpire(key, id, dbFallback, time, timeUnit);
         }
+        R r = type.cast(redisData.getData());
 
-        // 已过期， 查询数据库，进行缓存重建
-        String lockKey = RedisConstants.LOCK_KEY + type.getSimpleName() + ":" + id;
-        // 尝试获取锁
-        String lockValue = tryLock(lockKey);
-
-        if (StrUtil.isNotBlank(lockValue)) {
-            // 获取锁成功， 创建一个线程去重建缓存
-            log.info("成功获取锁，启动后台线程重建缓存...");
-            executorService.submit(() -> {
-               try {
-                    // 查询数据库
-                   R r1 = dbFallback.apply(id);
-                   // 写入redis中
-                   setWithLogicalExpire(key, r1, time, timeUnit);
-               }catch (Exception e){
-                   log.error("后台线程重建缓存失败", e);
-               }finally {
-                   // 释放锁
-                   unLock(lockKey, lockValue);
-               }
-            });
-
+        if (redisData.getExpireTime().isAfter(LocalDateTime.now())) {
+            // 未过期， 写入本地缓存并返回查询结果；临近过期时按概率提前重建
+            nearCache.put(keyPrefix, key, redisData);
+            if (shouldRefreshEarly(redisData)) {
+                rebuildAsync(key, id, type, dbFallback, time, timeUnit, redisData.getExpireTime());
+            }
+            return r;
         }
 
+        // 已过期， 后台查询数据库重建缓存，本次返回旧数据
+        rebuildAsync(key, id, type, dbFallback, time, timeUnit, redisData.getExpireTime());
         return r;
     }
 
 
     /**
-     * 加锁，使用 UUID 确保锁的安全性
-     * @param lockKey 锁的键
-     * @return 是否成功获取锁
+     * 没有旧数据可以返回时同步加载：同一个key的并发请求只有一个线程查询数据库，
+     * 存在则写入逻辑过期数据并记录加载耗时，不存在则缓存空值
      */
-    private String tryLock(String lockKey){
-        String uuid = UUID.randomUUID().toString(true);
-        Boolean result = stringRedisTemplate.opsForValue().setIfAbsent(lockKey,
-                uuid,
-                RedisConstants.LOCK_SHOP_TTL,
-                TimeUnit.MINUTES);
+    private <R, ID> R loadWithLogicalExpire(String key,
+                                            ID id,
+                                            Function<ID, R> dbFallback,
+                                            Long time,
+                                            TimeUnit timeUnit) {
+        return singleFlight.execute(key, () -> {
+            long begin = System.currentTimeMillis();
+            R r = dbFallback.apply(id);
+            if (r == null) {
+                setRaw(key, NULL_BYTES, RedisConstants.CACHE_NULL_TTL, TimeUnit.MINUTES);
+                return null;
+            }
+            setWithLogicalExpire(key, r, time, timeUnit, System.currentTimeMillis() - begin);
+            return r;
+        });
+    }
+
 
-        if(Boolean.TRUE.equals(result)){
-            // 上锁成功
-            return uuid;
+    /**
+     * 在后台线程中获取锁并重建缓存，获取锁失败说明其它节点正在重建；
+     * 本节点已有该key的重建任务或者重建队列已满时直接返回，调用方继续使用旧数据
+     * @param observedExpire 调用方读到的逻辑过期时间
+     */
+    private <R, ID> void rebuildAsync(String key,
+                                      ID id,
+                                      Class<R> type,
+                                      Function<ID, R> dbFallback,
+                                      Long time,
+                                      TimeUnit timeUnit,
+                                      LocalDateTime observedExpire) {
+        if (rebuildExecutor.isPending(key)) {
+            return;
         }
-        return null;
+        String lockKey = RedisConstants.LOCK_KEY + type.getSimpleName() + ":" + id;
+        // 锁由执行重建的线程获取和释放，持有期间由看门狗续期
+        rebuildExecutor.submit(key, () -> {
+            if (!distributedLock.tryLock(lockKey)) {
+                return;
+            }
+            try {
+                // 获取锁之后再检查一次，其它节点可能刚刚完成重建
+                byte[] bytes = getRaw(key);
+                RedisData current = bytes == null || bytes.length == 0 ? null
+                        : read(key, bytes, serializer -> serializer.deserializeWithExpire(bytes, type));
+                if (current != null && current.getExpireTime().isAfter(observedExpire)) {
+                    return;
+                }
+                long begin = System.currentTimeMillis();
+                // 查询数据库
+                R r1 = dbFallback.apply(id);
+                // 写入redis中，同时记录本次重建的耗时
+                setWithLogicalExpire(key, r1, time, timeUnit, System.currentTimeMillis() - begin);
+            } finally {
+                // 释放锁
+                distributedLock.unlock(lockKey);
+            }
+        });
     }
 
 
     /**
-     * 解锁，解锁前校验锁的值
-     * @param lockKey 锁的键
-     * @param value 锁的值，用于校验
+     * XFetch提前刷新：重建越慢、越接近过期，越可能提前刷新。
+     * 每个请求独立地按概率决定，重建时间被分散开，避免所有节点在过期的同一时刻争抢锁
+     * @param redisData 未过期的逻辑过期数据
+     * @return 是否需要提前重建
      */
-    private void unLock(String lockKey, String value){
-        try {
-            String storeValue = stringRedisTemplate.opsForValue().get(lockKey);
-            // 校验锁的值是否一致，防止误删
-            if (StrUtil.equals(storeValue, value)) {
-                stringRedisTemplate.delete(lockKey);
-            }
-        }catch (Exception e){
-            log.error("释放锁失败", e);
+    private boolean shouldRefreshEarly(RedisData redisData) {
+        Long rebuildCost = redisData.getRebuildCost();
+        if (!earlyRefresh.isEnabled() || rebuildCost == null || rebuildCost <= 0) {
+            return false;
         }
+        long now = System.currentTimeMillis();
+        long expire = redisData.getExpireTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        // -ln(rand) 服从指数分布，期望为1
+        double gap = -rebuildCost * earlyRefresh.getBeta() * Math.log(ThreadLocalRandom.current().nextDouble());
+        return now + gap >= expire;
     }
 
 
     public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit timeUnit) {
+        setWithLogicalExpire(key, value, time, timeUnit, null);
+    }
+
+
+    private void setWithLogicalExpire(String key, Object value, Long time, TimeUnit timeUnit, Long rebuildCost) {
         // 封装成RedisData对象
         RedisData redisData = RedisData.builder()
                 .data(value)
                 .expireTime(LocalDateTime.now().plusSeconds(timeUnit.toSeconds(time)))
+                .rebuildCost(rebuildCost)
                 .build();
 
         // 将封装的结果保存到redis中, 不设置TTL
-        stringRedisTemplate.opsForValue().set(key,
-                JSONUtil.toJsonStr(redisData));
+        setRaw(key, serializerFor(key).serializeWithExpire(redisData), null, null);
+        // 通知所有节点丢弃旧的本地缓存
+        nearCache.evict(key);
+    }
+
+
+    /**
+     * 批量写入逻辑过期数据，使用一次pipeline完成。
+     * 用于启动预热，只失效本节点的本地缓存，不逐条广播。
+     * 每条数据的过期时间加上随机的偏移，并记录重建耗时，避免同时写入的数据在同一时刻过期、同时重建
+     * @param values key和对应的数据
+     * @param time 逻辑过期时间
+     * @param timeUnit 时间单位
+     * @param jitter 过期时间随机增加 [0, jitter)
+     * @param rebuildCost 从数据库加载这些数据的耗时，单位毫秒，用于提前刷新
+     */
+    public void setAllWithLogicalExpire(Map<String, ?> values, Long time, TimeUnit timeUnit,
+                                        Duration jitter, long rebuildCost) {
+        if (values.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        long ttlMillis = timeUnit.toMillis(time);
+        long jitterMillis = Math.max(0, jitter.toMillis());
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Map.Entry<String, ?> entry : values.entrySet()) {
+                long offset = jitterMillis == 0 ? 0 : ThreadLocalRandom.current().nextLong(jitterMillis);
+                RedisData redisData = RedisData.builder()
+                        .data(entry.getValue())
+                        .expireTime(now.plus(ttlMillis + offset, ChronoUnit.MILLIS))
+                        .rebuildCost(rebuildCost)
+                        .build();
+                connection.set(rawKey(entry.getKey()), serializerFor(entry.getKey()).serializeWithExpire(redisData));
+            }
+            return null;
+        });
+        values.keySet().forEach(nearCache::invalidateLocal);
+    }
+
+
+    /**
+     * 删除缓存，同时失效所有节点上的本地缓存
+     * @param key redis中的key
+     */
+    public void delete(String key) {
+        stringRedisTemplate.delete(key);
+        nearCache.evict(key);
+    }
+
+
+    private CacheSerializer serializerOf(CacheProperties.SerializerType type) {
+        return type == CacheProperties.SerializerType.BINARY ? binarySerializer : jsonSerializer;
+    }
+
+    /**
+     * 写入时使用的序列化方式
+     */
+    private CacheSerializer serializerFor(String key) {
+        for (Map.Entry<String, CacheSerializer> entry : prefixSerializers.entrySet()) {
+            if (key.startsWith(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return defaultSerializer;
+    }
+
+    /**
+     * 读取时根据数据本身判断格式，迁移期间两种格式的数据可能同时存在
+     */
+    private CacheSerializer readerFor(String key, byte[] bytes) {
+        CacheSerializer serializer = serializerFor(key);
+        if (serializer.canRead(bytes)) {
+            return serializer;
+        }
+        if (binarySerializer.canRead(bytes)) {
+            return binarySerializer;
+        }
+        if (readLegacyJson && jsonSerializer.canRead(bytes)) {
+            return jsonSerializer;
+        }
+        return null;
+    }
+
+    /**
+     * 反序列化缓存数据，无法识别或者解析失败时返回null，由调用方按未命中处理
+     */
+    private <T> T read(String key, byte[] bytes, Function<CacheSerializer, T> reader) {
+        CacheSerializer serializer = readerFor(key, bytes);
+        if (serializer == null) {
+            return null;
+        }
+        try {
+            return reader.apply(serializer);
+        } catch (Exception e) {
+            log.warn("缓存数据解析失败，按未命中处理, key: {}", key, e);
+            return null;
+        }
+    }
+
+    private byte[] rawKey(String key) {
+        return stringRedisTemplate.getStringSerializer().serialize(key);
+    }
+
+    private byte[] getRaw(String key) {
+        byte[] rawKey = rawKey(key);
+        return stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey));
+    }
+
+    private void setRaw(String key, byte[] value, Long time, TimeUnit timeUnit) {
+        byte[] rawKey = rawKey(key);
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+            if (time == null) {
+                connection.set(rawKey, value);
+            } else {
+                connection.set(rawKey, value, Expiration.from(time, timeUnit), RedisStringCommands.SetOption.upsert());
+            }
+            return null;
+        });
     }
 
 }
@@ -0,0 +1,120 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.CacheProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 缓存重建的线程池：队列有界，同一个key同一时刻最多只有一个重建任务在排队或执行，
+ * 队列满时拒绝提交，由调用方继续返回旧数据
+ */
+@Slf4j
+@Component
+public class CacheRebuildExecutor {
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * 正在排队或执行的key
+     */
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+
+    private final CacheProperties.Rebuild properties;
+    private final Timer rebuildTimer;
+    private final Counter rejectedCounter;
+
+    @Autowired
+    public CacheRebuildExecutor(CacheProperties cacheProperties, MeterRegistry meterRegistry) {
+        this.properties = cacheProperties.getRebuild();
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "cache-rebuild-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.executor = new ThreadPoolExecutor(properties.getCoreSize(),
+                properties.getMaxSize(),
+                60L,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+
+        Gauge.builder("cache.rebuild.queue.size", executor, e -> e.getQueue().size())
+                .description("等待执行的缓存重建任务数")
+                .register(meterRegistry);
+        Gauge.builder("cache.rebuild.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("正在执行的缓存重建任务数")
+                .register(meterRegistry);
+        this.rebuildTimer = Timer.builder("cache.rebuild.latency")
+                .description("缓存重建耗时")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("cache.rebuild.rejected")
+                .description("队列已满被拒绝的重建任务数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 该key是否已经有重建任务在排队或执行
+     * @param key 缓存的key
+     */
+    public boolean isPending(String key) {
+        return pendingKeys.contains(key);
+    }
+
+    /**
+     * 提交重建任务
+     * @param key 缓存的key，用于去重
+     * @param task 重建逻辑
+     * @return 是否提交成功，已有相同key的任务或者队列已满时返回false
+     */
+    public boolean submit(String key, Runnable task) {
+        if (!pendingKeys.add(key)) {
+            return false;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    rebuildTimer.record(task);
+                } catch (Exception e) {
+                    log.error("后台线程重建缓存失败, key: {}", key, e);
+                } finally {
+                    pendingKeys.remove(key);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            pendingKeys.remove(key);
+            rejectedCounter.increment();
+            log.warn("缓存重建队列已满，继续返回旧数据, key: {}", key);
+            return false;
+        }
+    }
+
+    /**
+     * 停止接收新任务，等待已提交的任务执行完毕
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(properties.getShutdownTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+            log.warn("缓存重建任务未能在{}内完成，强制关闭", properties.getShutdownTimeout());
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.hmdp.utils;
+
+/**
+ * 缓存值的序列化方式，CacheClient 按key前缀选择具体的实现。
+ * 空字节数组保留给"数据不存在"的空值占位，实现类不会产生空字节数组
+ */
+public interface CacheSerializer {
+
+    /**
+     * 序列化普通缓存对象
+     * @param value 缓存对象，不能为null
+     * @return 序列化后的字节
+     */
+    byte[] serialize(Object value);
+
+    /**
+     * 反序列化普通缓存对象
+     * @param bytes 序列化后的字节
+     * @param type 对象类型
+     * @return 缓存对象
+     * @param <T> 对象类型的泛型
+     */
+    <T> T deserialize(byte[] bytes, Class<T> type);
+
+    /**
+     * 序列化带逻辑过期时间的缓存对象
+     * @param redisData 逻辑过期数据
+     * @return 序列化后的字节
+     */
+    byte[] serializeWithExpire(RedisData redisData);
+
+    /**
+     * 反序列化带逻辑过期时间的缓存对象，返回的 RedisData 中的 data 已经是 type 类型的对象
+     * @param bytes 序列化后的字节
+     * @param type data的类型
+     * @return 逻辑过期数据
+     */
+    RedisData deserializeWithExpire(byte[] bytes, Class<?> type);
+
+    /**
+     * 判断字节是否是本序列化方式产生的，用于兼容读取其它格式的旧数据
+     * @param bytes 序列化后的字节
+     * @return 是否可以由本实现读取
+     */
+    boolean canRead(byte[] bytes);
+}
@@ -0,0 +1,103 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.Validator;
+import cn.hutool.core.net.NetUtil;
+import cn.hutool.core.util.StrUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletRequest;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 解析请求的真实客户端ip。部署在nginx之后时 getRemoteAddr 是代理的地址，
+ * 只有请求直接来自受信任的代理时才读取 X-Forwarded-For / X-Real-IP，
+ * 从右往左跳过受信任的代理，第一个不受信任的地址就是客户端；否则客户端可以伪造请求头绕过限制
+ */
+@Component
+public class ClientIpResolver {
+
+    private static final String FORWARDED_FOR = "X-Forwarded-For";
+    private static final String REAL_IP = "X-Real-IP";
+
+    /**
+     * 受信任的代理，单个地址或IPv4网段(CIDR)
+     */
+    private final List<String> trustedProxies;
+
+    @Autowired
+    public ClientIpResolver(@Value("${hmdp.trusted-proxies:127.0.0.1,::1}") List<String> trustedProxies) {
+        this.trustedProxies = new ArrayList<>(trustedProxies);
+    }
+
+    /**
+     * @param request 当前请求
+     * @return 客户端ip
+     */
+    public String resolve(HttpServletRequest request) {
+        String remote = request.getRemoteAddr();
+        if (!isTrusted(remote)) {
+            return remote;
+        }
+        String forwarded = request.getHeader(FORWARDED_FOR);
+        if (StrUtil.isNotBlank(forwarded)) {
+            String client = remote;
+            String[] hops = forwarded.split(",");
+            for (int i = hops.length - 1; i >= 0; i--) {
+                String hop = hops[i].trim();
+                if (!isIp(hop)) {
+                    // 无法识别的内容不再往前解析，使用最后一个可信的地址
+                    break;
+                }
+                client = hop;
+                if (!isTrusted(hop)) {
+                    break;
+                }
+            }
+            return client;
+        }
+        String realIp = StrUtil.trim(request.getHeader(REAL_IP));
+        return isIp(realIp) ? realIp : remote;
+    }
+
+    private boolean isTrusted(String ip) {
+        if (!isIp(ip)) {
+            return false;
+        }
+        for (String proxy : trustedProxies) {
+            if (proxy.contains("/")) {
+                if (Validator.isIpv4(ip) && NetUtil.isInRange(ip, proxy)) {
+                    return true;
+                }
+            } else if (sameAddress(ip, proxy)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isIp(String value) {
+        return value != null && (Validator.isIpv4(value) || Validator.isIpv6(value));
+    }
+
+    /**
+     * IPv6有多种写法，例如 ::1 和 0:0:0:0:0:0:0:1，按地址比较；调用前已经确认是ip字面量，不会做DNS查询
+     */
+    private static boolean sameAddress(String ip, String proxy) {
+        if (ip.equals(proxy)) {
+            return true;
+        }
+        if (!isIp(proxy)) {
+            return false;
+        }
+        try {
+            return InetAddress.getByName(ip).equals(InetAddress.getByName(proxy));
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于redis的可重入分布式锁。
+ * 锁是一个hash，field是持有者标识(节点id + 线程id)，value是重入次数；
+ * 没有指定持有时间时由看门狗在持有期间定期续期，节点宕机后锁在租期结束时自动释放；
+ * 锁释放时通过redis频道通知，等待的线程被唤醒后再次尝试，不需要自旋
+ */
+@Slf4j
+@Component
+public class DistributedLock implements MessageListener {
+
+    private static final DefaultRedisScript<Long> ACQUIRE_SCRIPT = script("lua/lock_acquire.lua");
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = script("lua/lock_release.lua");
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT = script("lua/lock_renew.lua");
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * 看门狗模式下的租期
+     */
+    private final long watchdogLeaseMillis;
+
+    /**
+     * 正在等待某个锁的线程，收到锁释放的通知后唤醒
+     */
+    private final ConcurrentMap<String, Waiters> waiters = new ConcurrentHashMap<>();
+
+    /**
+     * 本节点持有的、由看门狗续期的锁，key是 锁的key + 持有者标识
+     */
+    private final ConcurrentMap<String, ScheduledFuture<?>> renewals = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "lock-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public DistributedLock(StringRedisTemplate stringRedisTemplate,
+                           RedisMessageListenerContainer listenerContainer) {
+        this(stringRedisTemplate, listenerContainer, TimeUnit.SECONDS.toMillis(RedisConstants.LOCK_LEASE_TTL));
+    }
+
+    DistributedLock(StringRedisTemplate stringRedisTemplate,
+                    RedisMessageListenerContainer listenerContainer,
+                    long watchdogLeaseMillis) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.watchdogLeaseMillis = watchdogLeaseMillis;
+    }
+
+    private static DefaultRedisScript<Long> script(String path) {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setLocation(new ClassPathResource(path));
+        script.setResultType(Long.class);
+        return script;
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(RedisConstants.LOCK_RELEASE_CHANNEL));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+    }
+
+    /**
+     * 尝试获取锁，不等待，持有期间由看门狗自动续期
+     * @param lockKey 锁的key
+     * @return 是否获取成功
+     */
+    public boolean tryLock(String lockKey) {
+        return tryAcquire(lockKey, -1, owner()) == null;
+    }
+
+    /**
+     * 获取锁，锁被其它线程持有时最多等待waitTime，持有期间由看门狗自动续期
+     * @param lockKey 锁的key
+     * @param waitTime 最长等待时间
+     * @param timeUnit 时间单位
+     * @return 是否获取成功
+     */
+    public boolean tryLock(String lockKey, long waitTime, TimeUnit timeUnit) throws InterruptedException {
+        return tryLock(lockKey, waitTime, -1, timeUnit);
+    }
+
+    /**
+     * 获取锁，锁被其它线程持有时最多等待waitTime
+     * @param lockKey 锁的key
+     * @param waitTime 最长等待时间
+     * @param leaseTime 持有时间，到期自动释放；小于等于0表示由看门狗续期直到调用unlock
+     * @param timeUnit 时间单位
+     * @return 是否获取成功
+     */
+    public boolean tryLock(String lockKey, long waitTime, long leaseTime, TimeUnit timeUnit) throws InterruptedException {
+        String owner = owner();
+        long leaseMillis = leaseTime > 0 ? timeUnit.toMillis(leaseTime) : -1;
+        Long ttl = tryAcquire(lockKey, leaseMillis, owner);
+        if (ttl == null) {
+            return true;
+        }
+        long deadline = System.currentTimeMillis() + timeUnit.toMillis(waitTime);
+        Waiters entry = waiters.compute(lockKey, (k, v) -> {
+            Waiters w = v == null ? new Waiters() : v;
+            w.count++;
+            return w;
+        });
+        try {
+            while (true) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                // 等待锁释放的通知；通知可能丢失，所以最多等到锁过期
+                long wait = ttl > 0 ? Math.min(ttl, remaining) : remaining;
+                entry.semaphore.tryAcquire(wait, TimeUnit.MILLISECONDS);
+                ttl = tryAcquire(lockKey, leaseMillis, owner);
+                if (ttl == null) {
+                    return true;
+                }
+            }
+        } finally {
+            waiters.computeIfPresent(lockKey, (k, v) -> --v.count == 0 ? null : v);
+        }
+    }
+
+    /**
+     * 释放锁，重入的锁需要释放相同的次数
+     * @param lockKey 锁的key
+     * @throws IllegalMonitorStateException 当前线程没有持有该锁(包括锁已经过期)
+     */
+    public void unlock(String lockKey) {
+        String owner = owner();
+        Long result = stringRedisTemplate.execute(RELEASE_SCRIPT,
+                Arrays.asList(lockKey, RedisConstants.LOCK_RELEASE_CHANNEL),
+                owner,
+                String.valueOf(watchdogLeaseMillis),
+                lockKey);
+        if (result == null) {
+            cancelRenewal(lockKey, owner);
+            throw new IllegalMonitorStateException("当前线程没有持有锁: " + lockKey);
+        }
+        if (result == 1L) {
+            cancelRenewal(lockKey, owner);
+        }
+    }
+
+    /**
+     * 当前线程是否持有该锁
+     * @param lockKey 锁的key
+     */
+    public boolean isHeldByCurrentThread(String lockKey) {
+        return stringRedisTemplate.opsForHash().hasKey(lockKey, owner());
+    }
+
+    /**
+     * 收到锁释放的通知，唤醒一个等待的线程
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Waiters entry = waiters.get(new String(message.getBody(), StandardCharsets.UTF_8));
+        if (entry != null) {
+            entry.semaphore.release();
+        }
+    }
+
+    /**
+     * 执行获取锁的脚本
+     * @return 获取成功返回null，失败返回锁的剩余过期时间(毫秒)
+     */
+    private Long tryAcquire(String lockKey, long leaseMillis, String owner) {
+        boolean useWatchdog = leaseMillis <= 0;
+        Long ttl = stringRedisTemplate.execute(ACQUIRE_SCRIPT,
+                Collections.singletonList(lockKey),
+                String.valueOf(useWatchdog ? watchdogLeaseMillis : leaseMillis),
+                owner);
+        if (ttl == null && useWatchdog) {
+            scheduleRenewal(lockKey, owner);
+        }
+        return ttl;
+    }
+
+    /**
+     * 每隔租期的1/3续期一次，重入时不重复调度
+     */
+    private void scheduleRenewal(String lockKey, String owner) {
+        long period = watchdogLeaseMillis / 3;
+        renewals.computeIfAbsent(lockKey + "|" + owner, k -> watchdog.scheduleAtFixedRate(() -> {
+            try {
+                Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT,
+                        Collections.singletonList(lockKey),
+                        String.valueOf(watchdogLeaseMillis),
+                        owner);
+                if (!Long.valueOf(1L).equals(renewed)) {
+                    // 锁已经不存在，停止续期
+                    cancelRenewal(lockKey, owner);
+                }
+            } catch (Exception e) {
+                // 下一次再试，锁在租期内仍然有效
+                log.error("锁续期失败, lockKey: {}", lockKey, e);
+            }
+        }, period, period, TimeUnit.MILLISECONDS));
+    }
+
+    private void cancelRenewal(String lockKey, String owner) {
+        ScheduledFuture<?> future = renewals.remove(lockKey + "|" + owner);
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    private static String owner() {
+        return SystemConstants.NODE_ID + ":" + Thread.currentThread().getId();
+    }
+
+    private static final class Waiters {
+        private final Semaphore semaphore = new Semaphore(0);
+        private int count;
+    }
+}
@@ -0,0 +1,50 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+/**
+ * 基于Hutool的JSON序列化，与之前直接使用 JSONUtil 写入的数据格式完全一致
+ */
+public class JsonCacheSerializer implements CacheSerializer {
+
+    @Override
+    public byte[] serialize(Object value) {
+        return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <T> T deserialize(byte[] bytes, Class<T> type) {
+        return JSONUtil.toBean(new String(bytes, StandardCharsets.UTF_8), type);
+    }
+
+    @Override
+    public byte[] serializeWithExpire(RedisData redisData) {
+        return serialize(redisData);
+    }
+
+    @Override
+    public RedisData deserializeWithExpire(byte[] bytes, Class<?> type) {
+        // 只解析一次，直接从JSON树中取出data转换成目标类型
+        JSONObject json = JSONUtil.parseObj(new String(bytes, StandardCharsets.UTF_8));
+        return RedisData.builder()
+                .expireTime(json.get("expireTime", LocalDateTime.class))
+                .data(json.getBean("data", type))
+                .rebuildCost(json.getLong("rebuildCost"))
+                .build();
+    }
+
+    @Override
+    public boolean canRead(byte[] bytes) {
+        // JSON对象以 { 开头，前面可能有空白
+        for (byte b : bytes) {
+            if (!Character.isWhitespace(b)) {
+                return b == '{' || b == '[' || b == '"';
+            }
+        }
+        return false;
+    }
+}
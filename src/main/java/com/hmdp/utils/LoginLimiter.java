@@ -0,0 +1,148 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.config.LoginProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 发送验证码和登录的防刷。按手机号和ip分别做滑动窗口限制，超限后锁定，锁定时间随超限次数翻倍；
+ * 检查和锁定在一次lua脚本中完成。已锁定的手机号和ip记录在本地缓存中，
+ * 锁定期间的请求在本节点直接拒绝，不再访问redis和数据库
+ */
+@Slf4j
+@Component
+public class LoginLimiter {
+
+    private static final DefaultRedisScript<List> LIMIT_SCRIPT;
+
+    static {
+        LIMIT_SCRIPT = new DefaultRedisScript<>();
+        LIMIT_SCRIPT.setLocation(new ClassPathResource("lua/login_limit.lua"));
+        LIMIT_SCRIPT.setResultType(List.class);
+    }
+
+    public static final String SCENE_SEND_CODE = "code";
+    public static final String SCENE_LOGIN = "login";
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final LoginProperties.Limit properties;
+    /**
+     * 已锁定的 场景:维度:值 -> 解锁时间(毫秒)
+     */
+    private final Cache<String, Long> locked;
+    private final Counter rejectedLocal;
+    private final Counter rejectedRedis;
+
+    @Autowired
+    public LoginLimiter(StringRedisTemplate stringRedisTemplate,
+                        LoginProperties loginProperties,
+                        MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.properties = loginProperties.getLimit();
+        this.locked = Caffeine.newBuilder()
+                .maximumSize(properties.getLocalMaximumSize())
+                .expireAfterWrite(properties.getLockMax())
+                .build();
+        this.rejectedLocal = rejected(meterRegistry, "local");
+        this.rejectedRedis = rejected(meterRegistry, "redis");
+    }
+
+    private static Counter rejected(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("login.limit.rejected")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 检查一次请求是否允许
+     * @param scene 场景，SCENE_SEND_CODE 或 SCENE_LOGIN
+     * @param phone 手机号
+     * @param ip 客户端ip，可以为null
+     * @return 0表示允许，否则为剩余的锁定时间(毫秒)
+     */
+    public long tryAcquire(String scene, String phone, String ip) {
+        if (!properties.isEnabled()) {
+            return 0;
+        }
+        String phoneId = scene + ":phone:" + phone;
+        String ipId = ip == null ? null : scene + ":ip:" + ip;
+
+        // 1.本地已锁定的直接拒绝
+        long now = System.currentTimeMillis();
+        long remaining = Math.max(localRemaining(phoneId, now), ipId == null ? 0 : localRemaining(ipId, now));
+        if (remaining > 0) {
+            rejectedLocal.increment();
+            return remaining;
+        }
+
+        // 2.redis中检查窗口和锁定状态
+        LoginProperties.Window window = SCENE_SEND_CODE.equals(scene) ? properties.getSendCode() : properties.getLogin();
+        List<String> ids = new ArrayList<>(2);
+        List<String> keys = new ArrayList<>(6);
+        List<String> args = new ArrayList<>(9);
+        args.add(String.valueOf(now));
+        args.add(SystemConstants.NODE_ID + ":" + sequence.incrementAndGet());
+        args.add(String.valueOf(properties.getLockBase().toMillis()));
+        args.add(String.valueOf(properties.getLockMax().toMillis()));
+        args.add(String.valueOf(properties.getLockLevelTtl().toMillis()));
+        addDimension(phoneId, window.getPhoneLimit(), window.getPhoneWindow().toMillis(), ids, keys, args);
+        if (ipId != null) {
+            addDimension(ipId, window.getIpLimit(), window.getIpWindow().toMillis(), ids, keys, args);
+        }
+        List<?> result;
+        try {
+            result = stringRedisTemplate.execute(LIMIT_SCRIPT, keys, args.toArray());
+        } catch (Exception e) {
+            // redis不可用时后续的验证码读写同样会失败，这里不拦截
+            log.error("登录防刷脚本执行失败, scene: {}, phone: {}", scene, phone, e);
+            return 0;
+        }
+        if (result == null || result.size() < 2) {
+            return 0;
+        }
+        int index = ((Number) result.get(0)).intValue();
+        if (index == 0) {
+            return 0;
+        }
+        long lock = ((Number) result.get(1)).longValue();
+        locked.put(ids.get(index - 1), now + lock);
+        rejectedRedis.increment();
+        return lock;
+    }
+
+    private long localRemaining(String id, long now) {
+        Long unlockAt = locked.getIfPresent(id);
+        if (unlockAt == null) {
+            return 0;
+        }
+        if (unlockAt <= now) {
+            locked.invalidate(id);
+            return 0;
+        }
+        return unlockAt - now;
+    }
+
+    private static void addDimension(String id, int limit, long window,
+                                     List<String> ids, List<String> keys, List<String> args) {
+        ids.add(id);
+        keys.add(RedisConstants.LOGIN_LIMIT_KEY + id);
+        keys.add(RedisConstants.LOGIN_LIMIT_KEY + id + ":lock");
+        keys.add(RedisConstants.LOGIN_LIMIT_KEY + id + ":level");
+        args.add(String.valueOf(limit));
+        args.add(String.valueOf(window));
+    }
+}
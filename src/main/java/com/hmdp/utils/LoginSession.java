@@ -0,0 +1,33 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+
+/**
+ * 本地缓存中的登录信息，同时记录redis中token的过期时间，用来判断是否需要续期
+ */
+public class LoginSession {
+
+    private final UserDTO user;
+
+    /**
+     * 本节点最近一次续期后token的过期时间(毫秒)，其它节点续期不会更新这里，只会比实际的早
+     */
+    private volatile long expireAt;
+
+    public LoginSession(UserDTO user, long expireAt) {
+        this.user = user;
+        this.expireAt = expireAt;
+    }
+
+    public UserDTO getUser() {
+        return user;
+    }
+
+    public long getExpireAt() {
+        return expireAt;
+    }
+
+    public void setExpireAt(long expireAt) {
+        this.expireAt = expireAt;
+    }
+}
@@ -0,0 +1,129 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.config.CacheProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * JVM内的一级缓存，位于redis之前。每个key前缀对应一个独立的有界缓存，
+ * 按容量和写入时间淘汰；删除缓存时通过redis频道广播，通知其它节点同步失效。
+ * 注意：缓存中的对象会被多个请求共享，调用方不要修改返回的对象
+ */
+@Slf4j
+@Component
+public class NearCache implements MessageListener {
+
+    /**
+     * 空值占位，用于缓存"数据不存在"的结果
+     */
+    public static final Object NULL_VALUE = new Object();
+
+    private final ConcurrentMap<String, Cache<String, Object>> caches = new ConcurrentHashMap<>();
+
+    private final CacheProperties.Local properties;
+    private final MeterRegistry meterRegistry;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    public NearCache(CacheProperties cacheProperties,
+                     MeterRegistry meterRegistry,
+                     StringRedisTemplate stringRedisTemplate,
+                     RedisMessageListenerContainer listenerContainer) {
+        this.properties = cacheProperties.getLocal();
+        this.meterRegistry = meterRegistry;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(RedisConstants.CACHE_INVALIDATE_CHANNEL));
+    }
+
+    /**
+     * 查询本地缓存
+     * @param keyPrefix key的前缀，决定使用哪个缓存分区
+     * @param key 完整的key
+     * @return 缓存的对象，可能是 NULL_VALUE；未命中返回null
+     */
+    public Object get(String keyPrefix, String key) {
+        if (!properties.isEnabled()) {
+            return null;
+        }
+        return cache(keyPrefix).getIfPresent(key);
+    }
+
+    /**
+     * 写入本地缓存
+     * @param keyPrefix key的前缀
+     * @param key 完整的key
+     * @param value 缓存的对象，为null时缓存空值占位
+     */
+    public void put(String keyPrefix, String key, Object value) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        cache(keyPrefix).put(key, value == null ? NULL_VALUE : value);
+    }
+
+    /**
+     * 失效本节点和其它所有节点上的key
+     * @param key 完整的key
+     */
+    public void evict(String key) {
+        invalidateLocal(key);
+        try {
+            stringRedisTemplate.convertAndSend(RedisConstants.CACHE_INVALIDATE_CHANNEL, key);
+        } catch (Exception e) {
+            // 广播失败时其它节点依靠本地缓存的过期时间兜底
+            log.error("广播缓存失效消息失败, key: {}", key, e);
+        }
+    }
+
+    /**
+     * 只失效本节点上的key
+     * @param key 完整的key
+     */
+    public void invalidateLocal(String key) {
+        // key前缀的数量很少，直接在每个分区中失效即可
+        caches.values().forEach(cache -> cache.invalidate(key));
+    }
+
+    /**
+     * 收到其它节点的失效广播
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        invalidateLocal(key);
+    }
+
+    private Cache<String, Object> cache(String keyPrefix) {
+        return caches.computeIfAbsent(keyPrefix, prefix -> {
+            Cache<String, Object> cache = Caffeine.newBuilder()
+                    .maximumSize(properties.getMaximumSize())
+                    .expireAfterWrite(properties.getExpireAfterWrite())
+                    .recordStats()
+                    .build();
+            // 命中、未命中、淘汰次数按前缀暴露到 /actuator/metrics/cache.gets 等指标中
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, prefix);
+            return cache;
+        });
+    }
+}
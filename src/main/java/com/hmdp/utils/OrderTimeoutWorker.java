@@ -0,0 +1,241 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IVoucherOrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 未支付订单的超时取消。下单时订单以支付截止时间为score加入 order:timeout，
+ * 后台线程批量领取到期的订单：数据库中仍未支付的订单改为已取消并补回库存，
+ * 然后补回redis中的库存。领取时设置租约，节点在处理过程中宕机时，租约到期后由其它节点重新处理；
+ * 两边的补回都可以重复执行，保证每个订单的库存只补回一次
+ */
+@Slf4j
+@Component
+public class OrderTimeoutWorker {
+
+    private static final DefaultRedisScript<List> CLAIM_SCRIPT;
+    private static final DefaultRedisScript<Long> RESTORE_SCRIPT;
+
+    static {
+        CLAIM_SCRIPT = new DefaultRedisScript<>();
+        CLAIM_SCRIPT.setLocation(new ClassPathResource("lua/order_timeout_claim.lua"));
+        CLAIM_SCRIPT.setResultType(List.class);
+        RESTORE_SCRIPT = new DefaultRedisScript<>();
+        RESTORE_SCRIPT.setLocation(new ClassPathResource("lua/order_restore.lua"));
+        RESTORE_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 订单状态：未支付
+     */
+    private static final int STATUS_UNPAID = 1;
+    /**
+     * 订单状态：已取消
+     */
+    private static final int STATUS_CANCELLED = 4;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "order-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final IVoucherOrderService voucherOrderService;
+    private final ISeckillVoucherService seckillVoucherService;
+    private final SeckillStockManager stockManager;
+    private final TransactionTemplate transactionTemplate;
+    private final SeckillProperties.Timeout properties;
+
+    private volatile boolean running = true;
+
+    @Autowired
+    public OrderTimeoutWorker(StringRedisTemplate stringRedisTemplate,
+                              IVoucherOrderService voucherOrderService,
+                              ISeckillVoucherService seckillVoucherService,
+                              SeckillStockManager stockManager,
+                              TransactionTemplate transactionTemplate,
+                              SeckillProperties seckillProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.voucherOrderService = voucherOrderService;
+        this.seckillVoucherService = seckillVoucherService;
+        this.stockManager = stockManager;
+        this.transactionTemplate = transactionTemplate;
+        this.properties = seckillProperties.getTimeout();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (properties.isEnabled()) {
+            executor.submit(this::run);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        executor.shutdownNow();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                List<String> claimed = claim();
+                if (!claimed.isEmpty()) {
+                    handle(claimed);
+                }
+                if (claimed.size() < properties.getBatchSize()) {
+                    // 没有更多到期的订单
+                    Thread.sleep(properties.getPollInterval().toMillis());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // 已领取的订单留在处理队列中，租约到期后重新处理
+                log.error("处理超时订单异常", e);
+                sleepQuietly();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> claim() {
+        long now = System.currentTimeMillis();
+        List<String> claimed = stringRedisTemplate.execute(CLAIM_SCRIPT,
+                Arrays.asList(RedisConstants.ORDER_TIMEOUT_KEY, RedisConstants.ORDER_TIMEOUT_PROCESSING_KEY),
+                String.valueOf(now),
+                String.valueOf(properties.getBatchSize()),
+                String.valueOf(now + properties.getLease().toMillis()));
+        return claimed == null ? new ArrayList<>() : claimed;
+    }
+
+    private void handle(List<String> members) {
+        Map<Long, TimeoutOrder> orders = members.stream()
+                .map(TimeoutOrder::parse)
+                .collect(Collectors.toMap(order -> order.id, Function.identity(), (a, b) -> a));
+
+        // 1.在一个事务中取消数据库中仍未支付的订单，并按优惠券合并补回库存
+        Set<Long> cancelled = new HashSet<>();
+        Set<Long> found = new HashSet<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            List<VoucherOrder> rows = voucherOrderService.list(new QueryWrapper<VoucherOrder>()
+                    .select("id", "voucher_id", "status")
+                    .in("id", orders.keySet())
+                    .last("FOR UPDATE"));
+            Map<Long, Integer> restock = new HashMap<>();
+            for (VoucherOrder row : rows) {
+                found.add(row.getId());
+                if (row.getStatus() == STATUS_UNPAID) {
+                    cancelled.add(row.getId());
+                    restock.merge(row.getVoucherId(), 1, Integer::sum);
+                } else if (row.getStatus() == STATUS_CANCELLED) {
+                    // 之前已经在数据库中取消，redis可能还没有补回
+                    cancelled.add(row.getId());
+                }
+            }
+            List<Long> unpaid = rows.stream()
+                    .filter(row -> row.getStatus() == STATUS_UNPAID)
+                    .map(VoucherOrder::getId)
+                    .collect(Collectors.toList());
+            if (!unpaid.isEmpty()) {
+                voucherOrderService.update()
+                        .set("status", STATUS_CANCELLED)
+                        .in("id", unpaid)
+                        .eq("status", STATUS_UNPAID)
+                        .update();
+            }
+            restock.forEach((voucherId, count) -> seckillVoucherService.update()
+                    .setSql("stock = stock + " + count)
+                    .eq("voucher_id", voucherId)
+                    .update());
+        });
+
+        // 2.补回redis库存，重复执行不会多补
+        Set<Long> replenished = new HashSet<>();
+        for (Long orderId : cancelled) {
+            TimeoutOrder order = orders.get(orderId);
+            Long restored = stringRedisTemplate.execute(RESTORE_SCRIPT,
+                    Arrays.asList(RedisConstants.SECKILL_ORDER_KEY + order.voucherId,
+                            SeckillStockManager.stockKey(order.voucherId)),
+                    order.userId.toString());
+            if (Long.valueOf(1L).equals(restored)) {
+                replenished.add(order.voucherId);
+            }
+        }
+        replenished.forEach(stockManager::notifyReplenished);
+
+        // 3.订单还在消息队列中没有写入数据库时稍后再检查；很久之前的订单说明已经丢失，交给对账任务处理
+        List<String> retry = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        long giveUp = properties.getPayTimeout().toMillis() + properties.getLease().toMillis() * 10;
+        for (TimeoutOrder order : orders.values()) {
+            if (!found.contains(order.id) && now - RedisIdWorker.timeOf(order.id) < giveUp) {
+                retry.add(order.member);
+            }
+        }
+        for (String member : retry) {
+            stringRedisTemplate.opsForZSet().add(RedisConstants.ORDER_TIMEOUT_KEY, member,
+                    now + properties.getRetryDelay().toMillis());
+        }
+        stringRedisTemplate.opsForZSet().remove(RedisConstants.ORDER_TIMEOUT_PROCESSING_KEY, members.toArray());
+        if (!cancelled.isEmpty()) {
+            log.info("取消超时未支付的订单: {}", cancelled);
+        }
+    }
+
+    private void sleepQuietly() {
+        try {
+            Thread.sleep(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    /**
+     * 超时队列中的成员，格式为 订单id:优惠券id:用户id
+     */
+    private static final class TimeoutOrder {
+        private final String member;
+        private final Long id;
+        private final Long voucherId;
+        private final Long userId;
+
+        private TimeoutOrder(String member, Long id, Long voucherId, Long userId) {
+            this.member = member;
+            this.id = id;
+            this.voucherId = voucherId;
+            this.userId = userId;
+        }
+
+        static TimeoutOrder parse(String member) {
+            String[] parts = member.split(":");
+            return new TimeoutOrder(member, Long.valueOf(parts[0]), Long.valueOf(parts[1]), Long.valueOf(parts[2]));
+        }
+    }
+}
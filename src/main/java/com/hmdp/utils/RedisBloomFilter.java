@@ -0,0 +1,261 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.CacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按缓存key前缀划分的布隆过滤器，用来拦截一定不存在的id，解决缓存穿透。
+ * 查询只使用JVM内的副本，不产生任何IO。每个节点启动时自己从数据库加载全部id，
+ * 之后新增的元素写入redis中的bitmap，同时追加到redis的新增日志(stream)并广播给其它节点。
+ * 各节点记录已经读到的日志位置，定期只读取之后新增的元素，弥补丢失的广播；
+ * 日志被裁剪掉未读的部分时才读取一次完整的bitmap合并
+ */
+@Slf4j
+@Component
+public class RedisBloomFilter implements MessageListener {
+
+    private static final String LOG_FIELD = "id";
+
+    private final ConcurrentMap<String, Filter> filters = new ConcurrentHashMap<>();
+
+    private final boolean enabled;
+    private final int logSize;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    public RedisBloomFilter(CacheProperties cacheProperties,
+                            StringRedisTemplate stringRedisTemplate,
+                            RedisMessageListenerContainer listenerContainer) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+
+        CacheProperties.Bloom properties = cacheProperties.getBloom();
+        this.enabled = properties.isEnabled();
+        this.logSize = properties.getLogSize();
+        for (Map.Entry<String, CacheProperties.BloomSpec> entry : properties.getFilters().entrySet()) {
+            BloomFilter bloom = BloomFilter.create(entry.getValue().getExpectedInsertions(), entry.getValue().getFpp());
+            filters.put(entry.getKey(), new Filter(entry.getKey(), bloom));
+        }
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(RedisConstants.BLOOM_ADD_CHANNEL));
+    }
+
+    /**
+     * 判断id是否可能存在。没有配置过滤器或者过滤器还没有初始化完成时，一律认为可能存在
+     * @param keyPrefix 缓存key的前缀
+     * @param id 数据id
+     * @return false表示一定不存在
+     */
+    public boolean mightContain(String keyPrefix, Object id) {
+        Filter filter = filters.get(keyPrefix);
+        if (!enabled || filter == null || !filter.ready) {
+            return true;
+        }
+        return filter.bloom.mightContain(String.valueOf(id));
+    }
+
+    /**
+     * 新增数据后调用，写入本地、redis，并通知其它节点
+     * @param keyPrefix 缓存key的前缀
+     * @param id 数据id
+     */
+    public void add(String keyPrefix, Object id) {
+        Filter filter = filters.get(keyPrefix);
+        if (!enabled || filter == null || id == null) {
+            return;
+        }
+        String value = String.valueOf(id);
+        long[] indexes = filter.bloom.indexes(value);
+        for (long index : indexes) {
+            filter.bloom.setBit(index);
+        }
+        try {
+            byte[] rawKey = rawKey(filter.redisKey);
+            byte[] rawLogKey = rawKey(filter.logKey);
+            Map<byte[], byte[]> entry = Collections.singletonMap(rawKey(LOG_FIELD), rawKey(value));
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (long index : indexes) {
+                    connection.setBit(rawKey, index, true);
+                }
+                connection.xAdd(rawLogKey, entry);
+                return null;
+            });
+            stringRedisTemplate.convertAndSend(RedisConstants.BLOOM_ADD_CHANNEL, keyPrefix + "\n" + value);
+        } catch (Exception e) {
+            // 本节点已经生效，其它节点在下一次定期合并时同步
+            log.error("布隆过滤器同步到redis失败, keyPrefix: {}, id: {}", keyPrefix, value, e);
+        }
+    }
+
+    /**
+     * 开始从数据库加载之前调用，记录当前新增日志的位置，加载期间其它节点新增的元素在就绪时补上
+     * @param keyPrefix 缓存key的前缀
+     */
+    public void prepare(String keyPrefix) {
+        Filter filter = filters.get(keyPrefix);
+        if (filter == null) {
+            return;
+        }
+        List<MapRecord<String, Object, Object>> last = stringRedisTemplate.opsForStream()
+                .reverseRange(filter.logKey, Range.unbounded(), RedisZSetCommands.Limit.limit().count(1));
+        filter.logOffset = last == null || last.isEmpty() ? null : last.get(0).getId().getValue();
+    }
+
+    /**
+     * 初始化时批量添加，只写入本地。数据库中已有的id每个节点都会自己加载，不需要写入redis
+     * @param keyPrefix 缓存key的前缀
+     * @param ids 数据id
+     */
+    public void addAllLocal(String keyPrefix, Collection<?> ids) {
+        Filter filter = filters.get(keyPrefix);
+        if (filter == null) {
+            return;
+        }
+        ids.forEach(id -> filter.bloom.add(String.valueOf(id)));
+    }
+
+    /**
+     * 初始化完成：合并加载期间其它节点新增的元素，之后开始拦截请求
+     * @param keyPrefix 缓存key的前缀
+     */
+    public void markReady(String keyPrefix) {
+        Filter filter = filters.get(keyPrefix);
+        if (filter == null) {
+            return;
+        }
+        syncFromRedis(filter);
+        filter.ready = true;
+        log.info("布隆过滤器初始化完成, keyPrefix: {}", keyPrefix);
+    }
+
+    @Scheduled(fixedDelayString = "${hmdp.cache.bloom.sync-interval:PT1M}")
+    public void syncAll() {
+        if (!enabled) {
+            return;
+        }
+        for (Filter filter : filters.values()) {
+            if (!filter.ready) {
+                continue;
+            }
+            try {
+                syncFromRedis(filter);
+                stringRedisTemplate.opsForStream().trim(filter.logKey, logSize);
+            } catch (Exception e) {
+                log.error("布隆过滤器从redis合并失败, keyPrefix: {}", filter.keyPrefix, e);
+            }
+        }
+    }
+
+    /**
+     * 收到其它节点新增元素的广播
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int split = body.indexOf('\n');
+        if (split < 0) {
+            return;
+        }
+        Filter filter = filters.get(body.substring(0, split));
+        if (filter != null) {
+            filter.bloom.add(body.substring(split + 1));
+        }
+    }
+
+    /**
+     * 从上次读到的位置开始读取新增日志，没有新增元素时只有一次很小的查询
+     */
+    private void syncFromRedis(Filter filter) {
+        String offset = filter.logOffset;
+        boolean first = true;
+        while (true) {
+            // 包含上次读到的那一条，用来判断日志是否被裁剪掉了未读的部分
+            Range<String> range = offset == null ? Range.unbounded()
+                    : Range.from(Range.Bound.inclusive(offset)).to(Range.Bound.unbounded());
+            List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                    .range(filter.logKey, range, RedisZSetCommands.Limit.limit().count(logSize));
+            if (records == null || records.isEmpty()) {
+                break;
+            }
+            if (first && offset != null && !offset.equals(records.get(0).getId().getValue())) {
+                log.warn("布隆过滤器新增日志已被裁剪，合并完整的bitmap, keyPrefix: {}", filter.keyPrefix);
+                mergeBitmap(filter);
+            }
+            first = false;
+            for (MapRecord<String, Object, Object> record : records) {
+                Object value = record.getValue().get(LOG_FIELD);
+                if (value != null) {
+                    filter.bloom.add(value.toString());
+                }
+            }
+            String last = records.get(records.size() - 1).getId().getValue();
+            if (last.equals(offset)) {
+                break;
+            }
+            offset = last;
+            filter.logOffset = last;
+        }
+    }
+
+    private void mergeBitmap(Filter filter) {
+        byte[] rawKey = rawKey(filter.redisKey);
+        byte[] bitmap = stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey));
+        if (bitmap != null) {
+            filter.bloom.merge(bitmap);
+        }
+    }
+
+    private byte[] rawKey(String key) {
+        return stringRedisTemplate.getStringSerializer().serialize(key);
+    }
+
+    private static final class Filter {
+        private final String keyPrefix;
+        private final BloomFilter bloom;
+        /**
+         * redis中bitmap的key，包含位数和哈希次数，配置变化后不会与旧的bitmap混用
+         */
+        private final String redisKey;
+        /**
+         * 新增日志的key
+         */
+        private final String logKey;
+        /**
+         * 已经读到的新增日志的位置，null表示从头读取
+         */
+        private volatile String logOffset;
+        private volatile boolean ready;
+
+        Filter(String keyPrefix, BloomFilter bloom) {
+            this.keyPrefix = keyPrefix;
+            this.bloom = bloom;
+            this.redisKey = RedisConstants.BLOOM_KEY + keyPrefix + bloom.numBits() + ":" + bloom.numHashes();
+            this.logKey = redisKey + ":log";
+        }
+    }
+}
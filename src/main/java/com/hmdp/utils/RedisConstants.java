@@ -5,21 +5,49 @@ public class RedisConstants {
     public static final Long LOGIN_CODE_TTL = 2L;
     public static final String LOGIN_USER_KEY = "login:token:";
     public static final Long LOGIN_USER_TTL = 36000L;
+    public static final String LOGIN_REVOKED_KEY = "login:revoked";
+    public static final String LOGIN_REVOKE_CHANNEL = "login:revoke";
+    public static final String LOGIN_REISSUED_KEY = "login:reissued:";
+    public static final String LOGIN_LIMIT_KEY = "login:limit:";
 
     public static final Long CACHE_NULL_TTL = 2L;
 
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
+    public static final Long CACHE_USER_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
+    public static final String CACHE_USER_PHONE_KEY = "cache:phone:";
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+    public static final Long CACHE_VOUCHER_LIST_TTL = 30L;
+    public static final String CACHE_VOUCHER_LIST_KEY = "cache:voucher:list:";
+
+    public static final String BLOOM_KEY = "bloom:";
+    public static final String BLOOM_ADD_CHANNEL = "bloom:add";
 
     public static final String LOCK_SHOP_KEY = "lock:shop:";
-    public static final Long LOCK_SHOP_TTL = 10L;
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_TIME_KEY = "seckill:time:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_STREAM_KEY = "stream.orders";
+    public static final String SECKILL_STREAM_GROUP = "g1";
+    public static final String SECKILL_DEAD_LETTER_KEY = "stream.orders.dead";
+    public static final String SECKILL_REPLENISH_CHANNEL = "seckill:replenish";
+    public static final String ORDER_TIMEOUT_KEY = "order:timeout";
+    public static final String ORDER_TIMEOUT_PROCESSING_KEY = "order:timeout:processing";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
     public static final String USER_SIGN_KEY = "sign:";
+    public static final String UV_KEY = "uv:";
+    public static final Long UV_TTL = 35L;
+    public static final String UV_MERGE_KEY = "uv:merge:";
+    public static final Long UV_MERGE_TTL = 60L;
+
 
+    public static final String RATE_LIMIT_KEY = "limit:";
 
     public static final String LOCK_KEY = "LOCK:";
+    public static final Long LOCK_LEASE_TTL = 30L;
+    public static final String LOCK_RELEASE_CHANNEL = "lock:release";
 }
@@ -10,4 +10,8 @@ import java.time.LocalDateTime;
 public class RedisData {
     private LocalDateTime expireTime;
     private Object data;
+    /**
+     * 上一次重建缓存(查询数据库)的耗时，单位毫秒，用于提前刷新的概率计算
+     */
+    private Long rebuildCost;
 }
@@ -0,0 +1,107 @@
+package com.hmdp.utils;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 全局唯一id生成器，id由三部分组成：
+ * 1位符号位(固定为0) + 31位时间戳(秒，相对于2022-01-01) + 32位序列号。
+ * 序列号是redis中按业务和日期划分的自增计数，每天重新开始。
+ * 分段模式下每个节点一次从redis预留一段序列号，段内的id在本地生成，不需要访问redis
+ */
+@Component
+public class RedisIdWorker {
+
+    /**
+     * 开始时间戳 2022-01-01 00:00:00 UTC
+     */
+    private static final long BEGIN_TIMESTAMP = 1640995200L;
+    /**
+     * 序列号的位数
+     */
+    private static final int COUNT_BITS = 32;
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 每次预留的序列号数量
+     */
+    private final int segmentSize;
+
+    private final ConcurrentMap<String, Segment> segments = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RedisIdWorker(StringRedisTemplate stringRedisTemplate,
+                         @Value("${hmdp.id.segment-size:1000}") int segmentSize) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.segmentSize = Math.max(1, segmentSize);
+    }
+
+    /**
+     * 生成id，每次调用都访问一次redis
+     * @param keyPrefix 业务前缀，不同业务的序列号相互独立
+     * @return id
+     */
+    public long nextId(String keyPrefix) {
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+        long timestamp = now.toEpochSecond(ZoneOffset.UTC) - BEGIN_TIMESTAMP;
+        String date = now.format(DATE_FORMATTER);
+        Long count = stringRedisTemplate.opsForValue().increment(key(keyPrefix, date));
+        return timestamp << COUNT_BITS | count;
+    }
+
+    /**
+     * 分段模式生成id，当前段用完或者跨天时才访问redis
+     * @param keyPrefix 业务前缀，不同业务的序列号相互独立
+     * @return id
+     */
+    public long nextSegmentId(String keyPrefix) {
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+        long timestamp = now.toEpochSecond(ZoneOffset.UTC) - BEGIN_TIMESTAMP;
+        String date = now.format(DATE_FORMATTER);
+        Segment segment = segments.computeIfAbsent(keyPrefix, k -> new Segment());
+        long count;
+        synchronized (segment) {
+            if (!date.equals(segment.date) || segment.next > segment.max) {
+                Long max = stringRedisTemplate.opsForValue().increment(key(keyPrefix, date), segmentSize);
+                segment.date = date;
+                segment.max = max;
+                segment.next = max - segmentSize + 1;
+            }
+            count = segment.next++;
+        }
+        return timestamp << COUNT_BITS | count;
+    }
+
+    /**
+     * 从id中取出生成时间
+     * @param id 由本类生成的id
+     * @return 生成时间的时间戳(毫秒)
+     */
+    public static long timeOf(long id) {
+        return ((id >>> COUNT_BITS) + BEGIN_TIMESTAMP) * 1000;
+    }
+
+    private static String key(String keyPrefix, String date) {
+        return "icr:" + keyPrefix + ":" + date;
+    }
+
+    /**
+     * 本节点预留的序列号区间 [next, max]
+     */
+    private static final class Segment {
+        private String date;
+        private long next;
+        private long max;
+    }
+}
@@ -0,0 +1,173 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.entity.SeckillVoucher;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * redis中的秒杀库存 seckill:stock:{id}。库存扣完后本节点标记该优惠券已售罄，之后的请求不再访问redis；
+ * 库存被补回时通过redis频道通知所有节点清除标记。
+ * 下单脚本同时访问库存、已下单用户、订单stream和超时队列，要求这些key在同一个redis实例上。
+ * 库存不拆分成多个子计数器：一人一单的检查和扣减必须在同一个脚本中完成，子计数器用 {id} 哈希标签
+ * 留在同一个slot时和单个key在同一个redis线程上执行，不能分摊压力；分到不同slot又无法在一个脚本中原子地扣减
+ */
+@Slf4j
+@Component
+public class SeckillStockManager implements MessageListener {
+
+    /**
+     * 售罄标记的有效期，补货通知丢失时最多这么久之后重新访问redis
+     */
+    private static final Duration SOLD_OUT_TTL = Duration.ofMinutes(1);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * 本节点认为已经售罄的优惠券
+     */
+    private final Cache<Long, Boolean> soldOut = Caffeine.newBuilder()
+            .maximumSize(10000)
+            .expireAfterWrite(SOLD_OUT_TTL)
+            .build();
+
+    @Autowired
+    public SeckillStockManager(StringRedisTemplate stringRedisTemplate,
+                               RedisMessageListenerContainer listenerContainer) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(RedisConstants.SECKILL_REPLENISH_CHANNEL));
+    }
+
+    /**
+     * 把秒杀优惠券的库存和秒杀时间写入redis
+     * @param seckillVoucher 秒杀优惠券
+     * @param overwrite false时如果redis中已经存在该优惠券则不写入，用于启动时加载，避免覆盖已经扣减过的库存
+     * @return 是否写入
+     */
+    public boolean publish(SeckillVoucher seckillVoucher, boolean overwrite) {
+        Long voucherId = seckillVoucher.getVoucherId();
+        String stock = String.valueOf(seckillVoucher.getStock());
+        if (overwrite) {
+            stringRedisTemplate.opsForValue().set(stockKey(voucherId), stock);
+        } else if (!Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(stockKey(voucherId), stock))) {
+            return false;
+        }
+        Map<String, String> window = new HashMap<>(4);
+        window.put("begin", String.valueOf(toEpochMilli(seckillVoucher.getBeginTime())));
+        window.put("end", String.valueOf(toEpochMilli(seckillVoucher.getEndTime())));
+        stringRedisTemplate.opsForHash().putAll(RedisConstants.SECKILL_TIME_KEY + voucherId, window);
+        notifyReplenished(voucherId);
+        return true;
+    }
+
+    /**
+     * 本节点是否已经确认该优惠券售罄，不产生任何IO
+     * @param voucherId 优惠券id
+     */
+    public boolean isSoldOut(Long voucherId) {
+        return soldOut.getIfPresent(voucherId) != null;
+    }
+
+    /**
+     * 库存扣完时调用
+     * @param voucherId 优惠券id
+     */
+    public void markSoldOut(Long voucherId) {
+        soldOut.put(voucherId, Boolean.TRUE);
+    }
+
+    /**
+     * 库存被补回后调用，通知所有节点清除售罄标记
+     * @param voucherId 优惠券id
+     */
+    public void notifyReplenished(Long voucherId) {
+        soldOut.invalidate(voucherId);
+        try {
+            stringRedisTemplate.convertAndSend(RedisConstants.SECKILL_REPLENISH_CHANNEL, voucherId.toString());
+        } catch (Exception e) {
+            // 其它节点的标记最多在有效期结束后失效
+            log.error("发送补货通知失败, voucherId: {}", voucherId, e);
+        }
+    }
+
+    /**
+     * 收到其它节点的补货通知
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            soldOut.invalidate(Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8)));
+        } catch (NumberFormatException e) {
+            log.warn("无法识别的补货通知: {}", new String(message.getBody(), StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * redis中的库存
+     * @param voucherId 优惠券id
+     * @return redis中不存在该优惠券时返回null
+     */
+    public Integer getStock(Long voucherId) {
+        String value = stringRedisTemplate.opsForValue().get(stockKey(voucherId));
+        return value == null ? null : Integer.valueOf(value);
+    }
+
+    /**
+     * 批量查询多个优惠券的库存，用一次MGET读取
+     * @param voucherIds 优惠券id
+     * @return 优惠券id和库存，redis中不存在的优惠券不包含在结果中
+     */
+    public Map<Long, Integer> getStocks(Collection<Long> voucherIds) {
+        Map<Long, Integer> stocks = new HashMap<>(voucherIds.size() * 2);
+        if (voucherIds.isEmpty()) {
+            return stocks;
+        }
+        List<Long> ids = new ArrayList<>(voucherIds);
+        List<String> keys = new ArrayList<>(ids.size());
+        for (Long voucherId : ids) {
+            keys.add(stockKey(voucherId));
+        }
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
+        if (values == null) {
+            return stocks;
+        }
+        for (int i = 0; i < values.size(); i++) {
+            if (values.get(i) != null) {
+                stocks.put(ids.get(i), Integer.valueOf(values.get(i)));
+            }
+        }
+        return stocks;
+    }
+
+    public static String stockKey(Long voucherId) {
+        return RedisConstants.SECKILL_STOCK_KEY + voucherId;
+    }
+
+    private static long toEpochMilli(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
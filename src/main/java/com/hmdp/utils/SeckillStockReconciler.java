@@ -0,0 +1,271 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IVoucherOrderService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.EqualsAndHashCode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.stream.StreamInfo;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 定期核对redis中的秒杀库存和数据库。同一个优惠券在两边都应满足：
+ * redis库存 + 已下单用户数 = 数据库库存 + 未取消的订单数 = 初始库存。
+ * 按优惠券id分页，每页一次分组统计订单数，不锁表。
+ * <p>
+ * 两边不是同一时刻读取的，所以按 redis快照 -> 订单队列 -> 数据库 -> redis快照 的顺序读取：
+ * 第一次快照之前扣减的订单在队列为空时都已写入数据库，之后的扣减会让两次快照不同。
+ * 队列不为空或者两次快照不同的优惠券本轮跳过。
+ * 修复模式下以数据库为准，修复脚本会再核对一次redis中的库存和已下单用户数，和快照不同时放弃修复
+ */
+@Slf4j
+@Component
+public class SeckillStockReconciler {
+
+    private static final DefaultRedisScript<Long> REPAIR_SCRIPT;
+
+    static {
+        REPAIR_SCRIPT = new DefaultRedisScript<>();
+        REPAIR_SCRIPT.setLocation(new ClassPathResource("lua/seckill_repair.lua"));
+        REPAIR_SCRIPT.setResultType(Long.class);
+    }
+
+    private static final String LOCK_NAME = RedisConstants.LOCK_KEY + "seckill:reconcile";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ISeckillVoucherService seckillVoucherService;
+    private final IVoucherOrderService voucherOrderService;
+    private final SeckillStockManager stockManager;
+    private final DistributedLock distributedLock;
+    private final SeckillProperties.Reconcile properties;
+    private final Counter divergenceCounter;
+    private final Counter repairCounter;
+
+    @Autowired
+    public SeckillStockReconciler(StringRedisTemplate stringRedisTemplate,
+                                  ISeckillVoucherService seckillVoucherService,
+                                  IVoucherOrderService voucherOrderService,
+                                  SeckillStockManager stockManager,
+                                  DistributedLock distributedLock,
+                                  SeckillProperties seckillProperties,
+                                  MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.seckillVoucherService = seckillVoucherService;
+        this.voucherOrderService = voucherOrderService;
+        this.stockManager = stockManager;
+        this.distributedLock = distributedLock;
+        this.properties = seckillProperties.getReconcile();
+        this.divergenceCounter = Counter.builder("seckill.reconcile.divergence")
+                .description("redis与数据库不一致的优惠券数")
+                .register(meterRegistry);
+        this.repairCounter = Counter.builder("seckill.reconcile.repaired")
+                .description("已修复的优惠券数")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${hmdp.seckill.reconcile.interval:PT5M}")
+    public void reconcile() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        // 只需要一个节点执行
+        if (!distributedLock.tryLock(LOCK_NAME)) {
+            return;
+        }
+        try {
+            int pageSize = properties.getPageSize();
+            long lastId = 0;
+            while (true) {
+                List<SeckillVoucher> vouchers = seckillVoucherService.list(new QueryWrapper<SeckillVoucher>()
+                        .select("voucher_id")
+                        .gt("voucher_id", lastId)
+                        .orderByAsc("voucher_id")
+                        .last("limit " + pageSize));
+                if (vouchers.isEmpty()) {
+                    break;
+                }
+                reconcilePage(vouchers);
+                if (vouchers.size() < pageSize) {
+                    break;
+                }
+                lastId = vouchers.get(vouchers.size() - 1).getVoucherId();
+            }
+        } catch (Exception e) {
+            log.error("秒杀库存对账失败", e);
+        } finally {
+            distributedLock.unlock(LOCK_NAME);
+        }
+    }
+
+    private void reconcilePage(List<SeckillVoucher> page) {
+        List<Long> voucherIds = page.stream().map(SeckillVoucher::getVoucherId).collect(Collectors.toList());
+        // 先读redis，没有发布到redis的优惠券不参与对账
+        Map<Long, Snapshot> before = snapshot(voucherIds);
+        if (before.isEmpty()) {
+            return;
+        }
+        if (hasOrderBacklog()) {
+            log.info("订单队列中还有未处理的订单，跳过本页对账, voucherIds: {}", before.keySet());
+            return;
+        }
+        // 再读数据库：库存和一次分组统计的有效订单数
+        Map<Long, Integer> dbStocks = new HashMap<>(before.size() * 2);
+        seckillVoucherService.list(new QueryWrapper<SeckillVoucher>()
+                        .select("voucher_id", "stock")
+                        .in("voucher_id", before.keySet()))
+                .forEach(voucher -> dbStocks.put(voucher.getVoucherId(), voucher.getStock()));
+        Map<Long, Long> orderCounts = new HashMap<>(before.size() * 2);
+        List<Map<String, Object>> rows = voucherOrderService.listMaps(new QueryWrapper<VoucherOrder>()
+                .select("voucher_id", "count(*) as cnt")
+                .in("voucher_id", before.keySet())
+                .ne("status", 4)
+                .groupBy("voucher_id"));
+        for (Map<String, Object> row : rows) {
+            orderCounts.put(((Number) row.get("voucher_id")).longValue(), ((Number) row.get("cnt")).longValue());
+        }
+        // 最后再读一次redis，期间有过扣减或补回的优惠券两边的数据不是同一时刻的
+        Map<Long, Snapshot> after = snapshot(before.keySet());
+
+        for (Map.Entry<Long, Snapshot> entry : before.entrySet()) {
+            Long voucherId = entry.getKey();
+            Snapshot redis = entry.getValue();
+            Integer dbStock = dbStocks.get(voucherId);
+            if (dbStock == null) {
+                continue;
+            }
+            if (!redis.equals(after.get(voucherId))) {
+                log.debug("对账期间redis库存发生变化，跳过, voucherId: {}", voucherId);
+                continue;
+            }
+            long dbOrders = orderCounts.getOrDefault(voucherId, 0L);
+            if (redis.stock + redis.orders == dbStock + dbOrders && redis.orders == dbOrders) {
+                continue;
+            }
+            divergenceCounter.increment();
+            log.warn("秒杀库存不一致, voucherId: {}, redis库存: {}, redis已下单: {}, 数据库库存: {}, 数据库订单: {}",
+                    voucherId, redis.stock, redis.orders, dbStock, dbOrders);
+            if (properties.getMode() == SeckillProperties.ReconcileMode.REPAIR) {
+                repair(voucherId, redis, dbStock);
+            }
+        }
+    }
+
+    private Map<Long, Snapshot> snapshot(Collection<Long> voucherIds) {
+        Map<Long, Integer> stocks = stockManager.getStocks(voucherIds);
+        Map<Long, Snapshot> snapshots = new HashMap<>(stocks.size() * 2);
+        for (Map.Entry<Long, Integer> entry : stocks.entrySet()) {
+            Long orders = stringRedisTemplate.opsForSet().size(RedisConstants.SECKILL_ORDER_KEY + entry.getKey());
+            snapshots.put(entry.getKey(), new Snapshot(entry.getValue(), orders == null ? 0 : orders));
+        }
+        return snapshots;
+    }
+
+    /**
+     * 以数据库为准修复redis，只在redis仍然是对账时读到的快照时才生效
+     */
+    private void repair(Long voucherId, Snapshot redis, int dbStock) {
+        List<String> keys = Arrays.asList(RedisConstants.SECKILL_ORDER_KEY + voucherId,
+                SeckillStockManager.stockKey(voucherId));
+
+        // 找出在redis中已下单、但数据库中没有有效订单的用户
+        List<String> orphans = new ArrayList<>();
+        ScanOptions options = ScanOptions.scanOptions().count(properties.getPageSize()).build();
+        try (Cursor<String> cursor = stringRedisTemplate.opsForSet()
+                .scan(RedisConstants.SECKILL_ORDER_KEY + voucherId, options)) {
+            List<String> batch = new ArrayList<>(properties.getPageSize());
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() >= properties.getPageSize()) {
+                    orphans.addAll(findOrphans(voucherId, batch));
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                orphans.addAll(findOrphans(voucherId, batch));
+            }
+        } catch (Exception e) {
+            log.error("扫描已下单用户失败, voucherId: {}", voucherId, e);
+            return;
+        }
+
+        int delta = dbStock - redis.stock;
+        List<String> args = new ArrayList<>(orphans.size() + 3);
+        args.add(String.valueOf(redis.stock));
+        args.add(String.valueOf(redis.orders));
+        args.add(String.valueOf(delta));
+        args.addAll(orphans);
+        Long removed = stringRedisTemplate.execute(REPAIR_SCRIPT, keys, args.toArray());
+        if (removed == null || removed < 0) {
+            log.info("修复期间redis库存发生变化，放弃修复, voucherId: {}", voucherId);
+            return;
+        }
+        repairCounter.increment();
+        log.warn("秒杀库存已修复, voucherId: {}, 库存调整: {}, 移除用户: {}", voucherId, delta, removed);
+        if (delta > 0) {
+            stockManager.notifyReplenished(voucherId);
+        }
+    }
+
+    private List<String> findOrphans(Long voucherId, List<String> userIds) {
+        Set<String> ordered = new HashSet<>();
+        voucherOrderService.listObjs(new QueryWrapper<VoucherOrder>()
+                        .select("user_id")
+                        .eq("voucher_id", voucherId)
+                        .in("user_id", userIds)
+                        .ne("status", 4))
+                .forEach(userId -> ordered.add(String.valueOf(userId)));
+        return userIds.stream().filter(userId -> !ordered.contains(userId)).collect(Collectors.toList());
+    }
+
+    /**
+     * 订单stream中是否还有未投递或未确认的消息
+     */
+    private boolean hasOrderBacklog() {
+        try {
+            StreamInfo.XInfoStream info = stringRedisTemplate.opsForStream().info(RedisConstants.SECKILL_STREAM_KEY);
+            return stringRedisTemplate.opsForStream().groups(RedisConstants.SECKILL_STREAM_KEY).stream()
+                    .filter(group -> RedisConstants.SECKILL_STREAM_GROUP.equals(group.groupName()))
+                    .anyMatch(group -> group.pendingCount() > 0
+                            || !group.lastDeliveredId().equals(info.lastGeneratedId()));
+        } catch (Exception e) {
+            // stream不存在时说明还没有任何订单
+            return false;
+        }
+    }
+
+    /**
+     * 某一时刻redis中的库存和已下单用户数
+     */
+    @EqualsAndHashCode
+    private static class Snapshot {
+        private final int stock;
+        private final long orders;
+
+        private Snapshot(int stock, long orders) {
+            this.stock = stock;
+            this.orders = orders;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.NumberUtil;
+import com.hmdp.entity.Sign;
+import com.hmdp.mapper.SignMapper;
+import com.hmdp.service.impl.SignServiceImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 每天夜里把redis中的签到bitmap合并到 tb_sign，每个用户每个月一行。
+ * 按批扫描 sign:* ，每批用一次pipeline读取bitmap，再用一条INSERT ... ON DUPLICATE KEY UPDATE 写入；
+ * 已经结束的月份写入后删除redis中的key，本月的key保留用于签到和统计
+ */
+@Slf4j
+@Component
+public class SignCompactor {
+
+    private static final String LOCK_NAME = RedisConstants.LOCK_KEY + "sign:compact";
+
+    /**
+     * 一次读取整个月：1号在最高位，没有的日期补0
+     */
+    private static final BitFieldSubCommands GET_MONTH = BitFieldSubCommands.create()
+            .get(BitFieldSubCommands.BitFieldType.unsigned(32))
+            .valueAt(0);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final SignMapper signMapper;
+    private final DistributedLock distributedLock;
+    private final int batchSize;
+
+    @Autowired
+    public SignCompactor(StringRedisTemplate stringRedisTemplate,
+                         SignMapper signMapper,
+                         DistributedLock distributedLock,
+                         @Value("${hmdp.sign.compact-batch-size:500}") int batchSize) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.signMapper = signMapper;
+        this.distributedLock = distributedLock;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @Scheduled(cron = "${hmdp.sign.compact-cron:0 30 3 * * ?}")
+    public void compact() {
+        // 只需要一个节点执行
+        if (!distributedLock.tryLock(LOCK_NAME)) {
+            return;
+        }
+        String currentMonth = LocalDate.now().format(SignServiceImpl.MONTH_FORMATTER);
+        long total = 0;
+        ScanOptions options = ScanOptions.scanOptions().match(RedisConstants.USER_SIGN_KEY + "*").count(batchSize).build();
+        try (Cursor<byte[]> cursor = stringRedisTemplate.executeWithStickyConnection(
+                connection -> connection.scan(options))) {
+            List<String> batch = new ArrayList<>(batchSize);
+            while (cursor.hasNext()) {
+                batch.add(new String(cursor.next(), StandardCharsets.UTF_8));
+                if (batch.size() >= batchSize) {
+                    total += flush(batch, currentMonth);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                total += flush(batch, currentMonth);
+            }
+            log.info("签到记录合并完成, 数量: {}", total);
+        } catch (Exception e) {
+            log.error("签到记录合并失败", e);
+        } finally {
+            distributedLock.unlock(LOCK_NAME);
+        }
+    }
+
+    int flush(List<String> keys, String currentMonth) {
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) {
+                connection.bitField(key.getBytes(StandardCharsets.UTF_8), GET_MONTH);
+            }
+            return null;
+        });
+        List<Sign> signs = new ArrayList<>(keys.size());
+        List<String> finished = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            // key的格式为 sign:{userId}:{yyyyMM}
+            String key = keys.get(i);
+            String[] parts = key.substring(RedisConstants.USER_SIGN_KEY.length()).split(":");
+            Object value = results.get(i);
+            if (parts.length != 2 || !NumberUtil.isLong(parts[0])
+                    || parts[1].length() != 6 || !NumberUtil.isInteger(parts[1]) || !(value instanceof List)) {
+                log.warn("忽略无法识别的签到key: {}", key);
+                continue;
+            }
+            List<?> bits = (List<?>) value;
+            if (bits.isEmpty() || bits.get(0) == null) {
+                continue;
+            }
+            String month = parts[1];
+            signs.add(new Sign()
+                    .setUserId(Long.valueOf(parts[0]))
+                    .setYear(Integer.valueOf(month.substring(0, 4)))
+                    .setMonth(Integer.valueOf(month.substring(4)))
+                    .setBits(((Number) bits.get(0)).longValue()));
+            if (month.compareTo(currentMonth) < 0) {
+                finished.add(key);
+            }
+        }
+        if (signs.isEmpty()) {
+            return 0;
+        }
+        signMapper.upsertBatch(signs);
+        // 写入数据库之后才删除，中途失败时下次重新合并，按位或合并可以重复执行
+        if (!finished.isEmpty()) {
+            stringRedisTemplate.delete(finished);
+        }
+        return signs.size();
+    }
+}
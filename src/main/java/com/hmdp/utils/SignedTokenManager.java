@@ -0,0 +1,288 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.codec.Base64;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.config.LoginProperties;
+import com.hmdp.dto.UserDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 签名token，格式为 base64url(用户信息json).base64url(HMAC-SHA256签名)，
+ * json中包含UserDTO的字段、签发时间iat、过期时间exp和唯一编号jti。校验只需要在本地验证签名和时间。
+ * 登出时记录该用户的登出时间(redis的zset，score为登出时间)，在此之前签发的所有token都失效；
+ * 登出记录同步到每个节点的内存中，校验时不访问redis
+ */
+@Slf4j
+@Component
+public class SignedTokenManager implements MessageListener {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final LoginProperties.Signed properties;
+    /**
+     * Mac不是线程安全的，每个线程使用自己的实例；未配置密钥时为null
+     */
+    private final ThreadLocal<Mac> mac;
+
+    /**
+     * 用户id -> 登出时间(毫秒)，早于签名token有效期的记录会被清理
+     */
+    private final ConcurrentMap<Long, Long> notBefore = new ConcurrentHashMap<>();
+
+    /**
+     * 本节点已经换发过新token的jti，其它节点换发过的由redis中的标记判断
+     */
+    private final Cache<String, Boolean> reissued;
+
+    @Autowired
+    public SignedTokenManager(StringRedisTemplate stringRedisTemplate,
+                              RedisMessageListenerContainer listenerContainer,
+                              LoginProperties loginProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.properties = loginProperties.getSigned();
+        if (StrUtil.isBlank(properties.getSecret())) {
+            if (loginProperties.getTokenMode() == LoginProperties.TokenMode.SIGNED) {
+                throw new IllegalStateException("SIGNED模式下必须配置 hmdp.login.signed.secret");
+            }
+            this.mac = null;
+        } else {
+            SecretKeySpec key = new SecretKeySpec(properties.getSecret().getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+            this.mac = ThreadLocal.withInitial(() -> newMac(key));
+            // 启动时检查算法和密钥是否可用
+            newMac(key);
+        }
+        this.reissued = Caffeine.newBuilder()
+                .maximumSize(100000)
+                .expireAfterWrite(properties.getReissueBefore())
+                .build();
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(RedisConstants.LOGIN_REVOKE_CHANNEL));
+        try {
+            syncRevoked();
+        } catch (Exception e) {
+            log.error("加载登出记录失败", e);
+        }
+    }
+
+    /**
+     * 判断是否为签名token，随机token(uuid)中不包含'.'
+     */
+    public static boolean isSignedToken(String token) {
+        return token.indexOf('.') > 0;
+    }
+
+    /**
+     * 签发token
+     * @param user 用户信息
+     * @return token
+     */
+    public String issue(UserDTO user) {
+        long now = System.currentTimeMillis();
+        JSONObject payload = JSONUtil.createObj()
+                .set("id", user.getId())
+                .set("nickName", user.getNickName())
+                .set("icon", user.getIcon())
+                .set("iat", now)
+                .set("exp", now + properties.getTtl().toMillis())
+                .set("jti", IdUtil.fastSimpleUUID());
+        String body = Base64.encodeUrlSafe(payload.toString().getBytes(StandardCharsets.UTF_8));
+        return body + "." + sign(body);
+    }
+
+    /**
+     * 校验token的签名、过期时间和用户是否在签发之后登出过
+     * @param token 签名token
+     * @return token中的信息，校验不通过返回null
+     */
+    public SignedToken parse(String token) {
+        int split = token.lastIndexOf('.');
+        if (mac == null || split <= 0) {
+            return null;
+        }
+        String body = token.substring(0, split);
+        byte[] expected = sign(body).getBytes(StandardCharsets.US_ASCII);
+        byte[] actual = token.substring(split + 1).getBytes(StandardCharsets.US_ASCII);
+        if (!MessageDigest.isEqual(expected, actual)) {
+            return null;
+        }
+        JSONObject payload;
+        try {
+            payload = JSONUtil.parseObj(Base64.decodeStr(body));
+        } catch (Exception e) {
+            return null;
+        }
+        Long userId = payload.getLong("id");
+        long iat = payload.getLong("iat", 0L);
+        long exp = payload.getLong("exp", 0L);
+        String jti = payload.getStr("jti");
+        if (userId == null || jti == null || exp <= System.currentTimeMillis()) {
+            return null;
+        }
+        Long revokedAt = notBefore.get(userId);
+        if (revokedAt != null && iat <= revokedAt) {
+            return null;
+        }
+        UserDTO user = new UserDTO();
+        user.setId(userId);
+        user.setNickName(payload.getStr("nickName"));
+        user.setIcon(payload.getStr("icon"));
+        return new SignedToken(user, jti, exp);
+    }
+
+    /**
+     * 快要过期的token换发一个新的token，每个token只换发一次
+     * @param signed 校验通过的token
+     * @return 新的token，不需要换发时返回null
+     */
+    public String reissue(SignedToken signed) {
+        long remaining = signed.getExpireAt() - System.currentTimeMillis();
+        if (remaining >= properties.getReissueBefore().toMillis()
+                || reissued.asMap().putIfAbsent(signed.getJti(), Boolean.TRUE) != null) {
+            return null;
+        }
+        try {
+            // 其它节点可能已经换发过
+            Boolean first = stringRedisTemplate.opsForValue().setIfAbsent(
+                    RedisConstants.LOGIN_REISSUED_KEY + signed.getJti(), "1", remaining, TimeUnit.MILLISECONDS);
+            if (!Boolean.TRUE.equals(first)) {
+                return null;
+            }
+        } catch (Exception e) {
+            // 下一次请求再换发
+            reissued.invalidate(signed.getJti());
+            log.error("记录token换发失败, jti: {}", signed.getJti(), e);
+            return null;
+        }
+        return issue(signed.getUser());
+    }
+
+    /**
+     * 登出，该用户在此之前签发的所有token都失效
+     * @param token 签名token
+     */
+    public void revoke(String token) {
+        SignedToken signed = parse(token);
+        if (signed == null) {
+            return;
+        }
+        Long userId = signed.getUser().getId();
+        long now = System.currentTimeMillis();
+        stringRedisTemplate.opsForZSet().add(RedisConstants.LOGIN_REVOKED_KEY, userId.toString(), now);
+        notBefore.merge(userId, now, Math::max);
+        try {
+            stringRedisTemplate.convertAndSend(RedisConstants.LOGIN_REVOKE_CHANNEL, userId + ":" + now);
+        } catch (Exception e) {
+            // 其它节点在下一次同步时获取
+            log.error("广播登出消息失败, userId: {}", userId, e);
+        }
+    }
+
+    /**
+     * 从redis同步登出记录，并清理已经超过token有效期的记录：这之前签发的token都已经过期
+     */
+    @Scheduled(fixedDelayString = "${hmdp.login.signed.revoke-sync-interval:PT1M}")
+    public void syncRevoked() {
+        if (mac == null) {
+            return;
+        }
+        long expired = System.currentTimeMillis() - properties.getTtl().toMillis();
+        stringRedisTemplate.opsForZSet().removeRangeByScore(RedisConstants.LOGIN_REVOKED_KEY, 0, expired);
+        Set<ZSetOperations.TypedTuple<String>> records = stringRedisTemplate.opsForZSet()
+                .rangeByScoreWithScores(RedisConstants.LOGIN_REVOKED_KEY, expired, Double.MAX_VALUE);
+        if (records != null) {
+            for (ZSetOperations.TypedTuple<String> record : records) {
+                if (record.getValue() != null && record.getScore() != null) {
+                    notBefore.merge(Long.valueOf(record.getValue()), record.getScore().longValue(), Math::max);
+                }
+            }
+        }
+        // 只按时间清理，本地多出来的记录不影响正确性
+        notBefore.values().removeIf(revokedAt -> revokedAt <= expired);
+    }
+
+    /**
+     * 收到其它节点的登出广播，格式为 用户id:登出时间
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int split = body.indexOf(':');
+        if (split <= 0) {
+            return;
+        }
+        notBefore.merge(Long.valueOf(body.substring(0, split)), Long.valueOf(body.substring(split + 1)), Math::max);
+    }
+
+    private String sign(String body) {
+        // doFinal之后Mac恢复初始状态，可以直接复用
+        return Base64.encodeUrlSafe(mac.get().doFinal(body.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static Mac newMac(SecretKeySpec key) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("初始化HMAC失败", e);
+        }
+    }
+
+    /**
+     * 校验通过的签名token
+     */
+    public static final class SignedToken {
+        private final UserDTO user;
+        private final String jti;
+        private final long expireAt;
+
+        private SignedToken(UserDTO user, String jti, long expireAt) {
+            this.user = user;
+            this.jti = jti;
+            this.expireAt = expireAt;
+        }
+
+        public UserDTO getUser() {
+            return user;
+        }
+
+        public String getJti() {
+            return jti;
+        }
+
+        public long getExpireAt() {
+            return expireAt;
+        }
+    }
+}
@@ -1,10 +1,16 @@
 package com.hmdp.utils;
 
+import cn.hutool.core.lang.UUID;
+
 public class SystemConstants {
     public static final String IMAGE_UPLOAD_DIR = "D:\\lesson\\nginx-1.18.0\\html\\hmdp\\imgs\\";
     public static final String USER_NICK_NAME_PREFIX = "user_";
     public static final int DEFAULT_PAGE_SIZE = 5;
     public static final int MAX_PAGE_SIZE = 10;
+    /**
+     * 当前JVM实例的唯一标识
+     */
+    public static final String NODE_ID = UUID.randomUUID().toString(true);
 
 
 
@@ -0,0 +1,39 @@
+package com.hmdp.utils;
+
+/**
+ * JVM内的令牌桶，按固定速率补充令牌，最多积攒capacity个
+ */
+public class TokenBucket {
+
+    private final double permitsPerNano;
+    private final double capacity;
+
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param permitsPerSecond 每秒补充的令牌数
+     * @param capacity 桶的容量，允许的突发请求数
+     */
+    public TokenBucket(double permitsPerSecond, double capacity) {
+        this.permitsPerNano = permitsPerSecond / 1_000_000_000D;
+        this.capacity = Math.max(1, capacity);
+        this.tokens = this.capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * 尝试获取一个令牌，不等待
+     * @return 是否获取成功
+     */
+    public synchronized boolean tryAcquire() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * permitsPerNano);
+        lastRefill = now;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+}
@@ -0,0 +1,150 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按天统计登录用户数(UV)。每天一个HyperLogLog：uv:{yyyyMMdd}，无论多少用户都只占用约12KB。
+ * 请求线程只把用户id写入本地缓冲区，由定时任务批量PFADD；
+ * 同一个用户在一段时间内只记录一次，活跃用户不会反复产生写入
+ */
+@Slf4j
+@Component
+public class UvCounter {
+
+    private static final DateTimeFormatter DAY_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    /**
+     * 每次PFADD的元素数量
+     */
+    private static final int PFADD_BATCH = 1000;
+
+    /**
+     * 日期 -> 待写入的用户id。集合只在 compute 中修改，和 flush 的 remove 使用同一个桶锁，
+     * 被取出的集合之后不会再有写入
+     */
+    private final ConcurrentMap<String, Set<String>> buffer = new ConcurrentHashMap<>();
+
+    /**
+     * 最近已经记录过的 日期:用户id
+     */
+    private final Cache<String, Boolean> recorded = Caffeine.newBuilder()
+            .maximumSize(100000)
+            .expireAfterWrite(Duration.ofHours(1))
+            .build();
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final boolean enabled;
+
+    @Autowired
+    public UvCounter(StringRedisTemplate stringRedisTemplate,
+                     @Value("${hmdp.uv.enabled:true}") boolean enabled) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.enabled = enabled;
+    }
+
+    /**
+     * 记录一次访问，只写入本地缓冲区
+     * @param userId 用户id
+     */
+    public void record(Long userId) {
+        if (!enabled || userId == null) {
+            return;
+        }
+        String day = LocalDate.now().format(DAY_FORMATTER);
+        String id = userId.toString();
+        if (recorded.getIfPresent(day + ":" + id) != null) {
+            return;
+        }
+        recorded.put(day + ":" + id, Boolean.TRUE);
+        buffer.compute(day, (k, ids) -> {
+            Set<String> set = ids == null ? new HashSet<>() : ids;
+            set.add(id);
+            return set;
+        });
+    }
+
+    /**
+     * 把缓冲区写入redis。按天原子地取出整个集合，之后记录的用户id进入新的集合，等下一次写入；
+     * 写入失败时放回缓冲区
+     */
+    @Scheduled(fixedDelayString = "${hmdp.uv.flush-interval:PT5S}")
+    @PreDestroy
+    public void flush() {
+        for (String day : new ArrayList<>(buffer.keySet())) {
+            Set<String> ids = buffer.remove(day);
+            if (ids == null || ids.isEmpty()) {
+                continue;
+            }
+            byte[] key = (RedisConstants.UV_KEY + day).getBytes(StandardCharsets.UTF_8);
+            List<String> all = new ArrayList<>(ids);
+            try {
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    for (int i = 0; i < all.size(); i += PFADD_BATCH) {
+                        List<String> part = all.subList(i, Math.min(i + PFADD_BATCH, all.size()));
+                        byte[][] values = new byte[part.size()][];
+                        for (int j = 0; j < part.size(); j++) {
+                            values[j] = part.get(j).getBytes(StandardCharsets.UTF_8);
+                        }
+                        connection.pfAdd(key, values);
+                    }
+                    connection.expire(key, TimeUnit.DAYS.toSeconds(RedisConstants.UV_TTL));
+                    return null;
+                });
+            } catch (Exception e) {
+                // 放回缓冲区，下次重新写入
+                buffer.compute(day, (k, current) -> {
+                    Set<String> set = current == null ? new HashSet<>() : current;
+                    set.addAll(ids);
+                    return set;
+                });
+                log.error("写入UV统计失败, day: {}, 数量: {}", day, ids.size(), e);
+            }
+        }
+    }
+
+    /**
+     * 统计截至今天的最近若干天的去重用户数。今天以前的天合并后缓存一段时间，今天的实时统计
+     * @param days 天数，1为当天
+     * @return 去重后的用户数
+     */
+    public long count(int days) {
+        LocalDate today = LocalDate.now();
+        String todayKey = RedisConstants.UV_KEY + today.format(DAY_FORMATTER);
+        if (days <= 1) {
+            Long count = stringRedisTemplate.opsForHyperLogLog().size(todayKey);
+            return count == null ? 0 : count;
+        }
+        String mergedKey = RedisConstants.UV_MERGE_KEY + days + ":" + today.format(DAY_FORMATTER);
+        if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(mergedKey))) {
+            String[] history = new String[days - 1];
+            for (int i = 1; i < days; i++) {
+                history[i - 1] = RedisConstants.UV_KEY + today.minusDays(i).format(DAY_FORMATTER);
+            }
+            stringRedisTemplate.opsForHyperLogLog().union(mergedKey, history);
+            stringRedisTemplate.expire(mergedKey, RedisConstants.UV_MERGE_TTL, TimeUnit.MINUTES);
+        }
+        Long count = stringRedisTemplate.opsForHyperLogLog().size(mergedKey, todayKey);
+        return count == null ? 0 : count;
+    }
+}
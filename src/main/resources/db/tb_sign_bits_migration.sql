@@ -0,0 +1,23 @@
+-- ----------------------------
+-- tb_sign 从每天一行(date, is_backup)改为每个用户每个月一行(bits)
+-- 在旧结构的库上执行一次：按用户和月份把旧记录折叠成位图写入新表，然后替换旧表。
+-- 第n天对应第32-n位(1号在最高位)，与redis中的签到bitmap以及 SignCompactor 写入的值一致；补签的记录同样算作已签到。
+-- 旧表保留为 tb_sign_old，核对无误后手动删除
+-- ----------------------------
+DROP TABLE IF EXISTS `tb_sign_new`;
+CREATE TABLE `tb_sign_new`  (
+  `id` bigint(20) UNSIGNED NOT NULL AUTO_INCREMENT COMMENT '主键',
+  `user_id` bigint(20) UNSIGNED NOT NULL COMMENT '用户id',
+  `year` year NOT NULL COMMENT '签到的年',
+  `month` tinyint(2) NOT NULL COMMENT '签到的月',
+  `bits` int(10) UNSIGNED NOT NULL DEFAULT 0 COMMENT '当月的签到记录，最高位是1号，第n天是第32-n位',
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE INDEX `uniqe_key_user_month`(`user_id`, `year`, `month`) USING BTREE
+) ENGINE = InnoDB AUTO_INCREMENT = 1 CHARACTER SET = utf8mb4 COLLATE = utf8mb4_general_ci ROW_FORMAT = Compact;
+
+INSERT INTO `tb_sign_new` (`user_id`, `year`, `month`, `bits`)
+SELECT `user_id`, YEAR(`date`), MONTH(`date`), BIT_OR(1 << (32 - DAYOFMONTH(`date`)))
+FROM `tb_sign`
+GROUP BY `user_id`, YEAR(`date`), MONTH(`date`);
+
+RENAME TABLE `tb_sign` TO `tb_sign_old`, `tb_sign_new` TO `tb_sign`;
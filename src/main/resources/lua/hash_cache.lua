@@ -0,0 +1,11 @@
+-- 写入hash缓存并设置过期时间，在一个脚本中完成，不会留下没有过期时间的key
+-- KEYS[1] 缓存的key
+-- ARGV[1] 过期时间(秒)  ARGV[2] 1:key已经存在时不写入，用于空值占位，避免覆盖并发写入的真实数据 0:直接覆盖
+-- ARGV[3...] 依次是field和value
+-- 返回 1:已写入 0:key已经存在
+if ARGV[2] == '1' and redis.call('exists', KEYS[1]) == 1 then
+    return 0
+end
+redis.call('hset', KEYS[1], unpack(ARGV, 3))
+redis.call('expire', KEYS[1], ARGV[1])
+return 1
@@ -0,0 +1,9 @@
+-- 获取可重入锁：锁不存在或者已被当前持有者持有时，重入次数加1并重置过期时间
+-- KEYS[1] 锁的key  ARGV[1] 过期时间(毫秒)  ARGV[2] 持有者标识
+-- 获取成功返回nil，失败返回锁的剩余过期时间(毫秒)
+if (redis.call('exists', KEYS[1]) == 0) or (redis.call('hexists', KEYS[1], ARGV[2]) == 1) then
+    redis.call('hincrby', KEYS[1], ARGV[2], 1)
+    redis.call('pexpire', KEYS[1], ARGV[1])
+    return nil
+end
+return redis.call('pttl', KEYS[1])
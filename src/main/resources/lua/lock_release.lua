@@ -0,0 +1,15 @@
+-- 释放可重入锁：重入次数减1，减到0时删除锁并通知等待的线程
+-- KEYS[1] 锁的key  KEYS[2] 通知频道
+-- ARGV[1] 持有者标识  ARGV[2] 过期时间(毫秒)  ARGV[3] 通知内容
+-- 不是持有者返回nil，仍有重入返回0，完全释放返回1
+if redis.call('hexists', KEYS[1], ARGV[1]) == 0 then
+    return nil
+end
+local counter = redis.call('hincrby', KEYS[1], ARGV[1], -1)
+if counter > 0 then
+    redis.call('pexpire', KEYS[1], ARGV[2])
+    return 0
+end
+redis.call('del', KEYS[1])
+redis.call('publish', KEYS[2], ARGV[3])
+return 1
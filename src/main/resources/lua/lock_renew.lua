@@ -0,0 +1,6 @@
+-- 续期：只有持有者才能延长过期时间
+-- KEYS[1] 锁的key  ARGV[1] 过期时间(毫秒)  ARGV[2] 持有者标识
+if redis.call('hexists', KEYS[1], ARGV[2]) == 1 then
+    return redis.call('pexpire', KEYS[1], ARGV[1])
+end
+return 0
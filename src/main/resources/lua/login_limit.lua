@@ -0,0 +1,42 @@
+-- 登录相关接口的防刷：每个维度(手机号、ip)一个滑动窗口，超限后锁定，锁定时间随超限次数翻倍
+-- KEYS[3i-2] 第i个维度的窗口zset  KEYS[3i-1] 第i个维度的锁定标记  KEYS[3i] 第i个维度的超限次数
+-- ARGV[1] 当前时间(毫秒)  ARGV[2] 本次请求的唯一标识
+-- ARGV[3] 首次锁定时间(毫秒)  ARGV[4] 最长锁定时间(毫秒)  ARGV[5] 超限次数的保留时间(毫秒)
+-- ARGV[4 + 2i] 第i个维度窗口内允许的请求数  ARGV[5 + 2i] 第i个维度的窗口长度(毫秒)
+-- 返回 {0, 0}:放行  {i, 剩余锁定时间}:第i个维度已锁定
+local now = tonumber(ARGV[1])
+local base = tonumber(ARGV[3])
+local maxLock = tonumber(ARGV[4])
+local levelTtl = tonumber(ARGV[5])
+local n = #KEYS / 3
+
+-- 1.已经锁定的维度直接拒绝
+for i = 1, n do
+    local ttl = redis.call('pttl', KEYS[3 * i - 1])
+    if ttl > 0 then
+        return {i, ttl}
+    end
+end
+
+-- 2.检查窗口，超限时按超限次数锁定
+for i = 1, n do
+    local key = KEYS[3 * i - 2]
+    local limit = tonumber(ARGV[4 + 2 * i])
+    local window = tonumber(ARGV[5 + 2 * i])
+    redis.call('zremrangebyscore', key, 0, now - window)
+    if redis.call('zcard', key) >= limit then
+        local level = redis.call('incr', KEYS[3 * i])
+        redis.call('pexpire', KEYS[3 * i], levelTtl)
+        local lock = math.floor(math.min(base * 2 ^ (level - 1), maxLock))
+        redis.call('set', KEYS[3 * i - 1], level, 'PX', lock)
+        return {i, lock}
+    end
+end
+
+-- 3.所有窗口都未超限时才记录本次请求
+for i = 1, n do
+    local key = KEYS[3 * i - 2]
+    redis.call('zadd', key, now, ARGV[2])
+    redis.call('pexpire', key, ARGV[5 + 2 * i])
+end
+return {0, 0}
@@ -0,0 +1,12 @@
+-- 订单取消后补回redis库存，可以重复执行：只有用户还在已下单集合中时才补回
+-- KEYS[1] 已下单用户的set  KEYS[2] 库存key
+-- ARGV[1] 用户id
+-- 返回 1:已补回 0:之前已经补回过
+if redis.call('srem', KEYS[1], ARGV[1]) == 1 then
+    -- 优惠券已经从redis中移除时不再补回
+    if redis.call('exists', KEYS[2]) == 1 then
+        redis.call('incr', KEYS[2])
+    end
+    return 1
+end
+return 0
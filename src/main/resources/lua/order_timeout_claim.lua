@@ -0,0 +1,17 @@
+-- 领取到期的超时订单：从等待队列和租约已过期的处理队列中取出一批，
+-- 放入处理队列并设置租约，处理完成后由调用方删除；处理中的节点宕机时，租约到期后会被重新领取
+-- KEYS[1] 等待队列  KEYS[2] 处理队列
+-- ARGV[1] 当前时间(毫秒)  ARGV[2] 最多领取的数量  ARGV[3] 租约到期时间(毫秒)
+local limit = tonumber(ARGV[2])
+local claimed = redis.call('zrangebyscore', KEYS[2], '-inf', ARGV[1], 'LIMIT', 0, limit)
+if #claimed < limit then
+    local due = redis.call('zrangebyscore', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, limit - #claimed)
+    for _, member in ipairs(due) do
+        redis.call('zrem', KEYS[1], member)
+        table.insert(claimed, member)
+    end
+end
+for _, member in ipairs(claimed) do
+    redis.call('zadd', KEYS[2], ARGV[3], member)
+end
+return claimed
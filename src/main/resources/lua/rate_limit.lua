@@ -0,0 +1,20 @@
+-- 滑动窗口限流：窗口内的请求保存在zset中，score是请求时间
+-- 所有窗口都未超限时才记录本次请求，任何一个窗口超限都拒绝
+-- KEYS[i] 第i个窗口的key
+-- ARGV[1] 当前时间(毫秒)  ARGV[2] 本次请求的唯一标识
+-- ARGV[1 + 2i] 第i个窗口允许的请求数  ARGV[2 + 2i] 第i个窗口的长度(毫秒)
+-- 返回 0:放行  i:第i个窗口超限
+local now = tonumber(ARGV[1])
+for i, key in ipairs(KEYS) do
+    local limit = tonumber(ARGV[1 + 2 * i])
+    local window = tonumber(ARGV[2 + 2 * i])
+    redis.call('zremrangebyscore', key, 0, now - window)
+    if redis.call('zcard', key) >= limit then
+        return i
+    end
+end
+for i, key in ipairs(KEYS) do
+    redis.call('zadd', key, now, ARGV[2])
+    redis.call('pexpire', key, ARGV[2 + 2 * i])
+end
+return 0
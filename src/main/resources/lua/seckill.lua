@@ -0,0 +1,32 @@
+-- 秒杀资格判断：校验时间、库存、一人一单，通过后扣减库存并把订单写入消息队列
+-- 开启超时取消时同时把订单加入超时队列，未支付的订单到期后自动取消
+-- KEYS[1] 库存key  KEYS[2] 秒杀时间的hash  KEYS[3] 已下单用户的set  KEYS[4] 订单stream
+-- KEYS[5] 订单超时队列的zset
+-- ARGV[1] 优惠券id  ARGV[2] 用户id  ARGV[3] 订单id  ARGV[4] 当前时间(毫秒)  ARGV[5] 支付截止时间(毫秒)
+-- ARGV[6] 是否开启超时取消 1:开启 0:关闭
+-- 返回 0:成功 1:库存不足 2:重复下单 3:秒杀未开始 4:秒杀已结束 5:优惠券不存在
+local stock = redis.call('get', KEYS[1])
+if not stock then
+    return 5
+end
+local window = redis.call('hmget', KEYS[2], 'begin', 'end')
+local now = tonumber(ARGV[4])
+if window[1] and now < tonumber(window[1]) then
+    return 3
+end
+if window[2] and now > tonumber(window[2]) then
+    return 4
+end
+if redis.call('sismember', KEYS[3], ARGV[2]) == 1 then
+    return 2
+end
+if tonumber(stock) <= 0 then
+    return 1
+end
+redis.call('incrby', KEYS[1], -1)
+redis.call('sadd', KEYS[3], ARGV[2])
+redis.call('xadd', KEYS[4], '*', 'id', ARGV[3], 'userId', ARGV[2], 'voucherId', ARGV[1])
+if ARGV[6] == '1' then
+    redis.call('zadd', KEYS[5], ARGV[5], ARGV[3] .. ':' .. ARGV[1] .. ':' .. ARGV[2])
+end
+return 0
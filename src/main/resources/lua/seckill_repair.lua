@@ -0,0 +1,20 @@
+-- 对账修复：从已下单用户中移除没有订单的用户，并按差值调整库存
+-- 只有redis中的库存和已下单用户数仍然等于对账时读到的值才修复，否则说明期间有新的扣减或补回
+-- KEYS[1] 已下单用户的set  KEYS[2] 库存key
+-- ARGV[1] 对账时的库存  ARGV[2] 对账时的已下单用户数
+-- ARGV[3] 库存差值，正数补回，负数扣减  ARGV[4..m] 需要移除的用户id
+-- 返回实际移除的用户数，redis已经变化时返回-1
+local stock = tonumber(redis.call('get', KEYS[2]))
+if stock == nil or stock ~= tonumber(ARGV[1]) or redis.call('scard', KEYS[1]) ~= tonumber(ARGV[2]) then
+    return -1
+end
+local removed = 0
+for i = 4, #ARGV do
+    removed = removed + redis.call('srem', KEYS[1], ARGV[i])
+end
+local delta = tonumber(ARGV[3])
+if delta ~= 0 then
+    -- 库存不会小于0
+    redis.call('set', KEYS[2], math.max(stock + delta, 0))
+end
+return removed
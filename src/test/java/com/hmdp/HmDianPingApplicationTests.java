@@ -1,27 +1,164 @@
 package com.hmdp;
 
+import cn.hutool.core.util.RandomUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.dto.LoginFormDTO;
+import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
+import com.hmdp.entity.User;
 import com.hmdp.service.IShopService;
+import com.hmdp.service.IUserService;
 import com.hmdp.service.impl.ShopServiceImpl;
 import com.hmdp.utils.CacheClient;
 import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.RedisIdWorker;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.StringRedisTemplate;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 
-@SpringBootTest
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 并发登录的测试不能被登录防刷拦截，token使用redis中的hash保存用户信息
+@SpringBootTest(properties = {"hmdp.login.limit.enabled=false", "hmdp.login.token-mode=session"})
 class HmDianPingApplicationTests {
 
     @Resource
     public IShopService shopService;
     @Resource
     public CacheClient cacheClient;
+    @Resource
+    public RedisIdWorker redisIdWorker;
+    @Resource
+    public IUserService userService;
+    @Resource
+    public StringRedisTemplate stringRedisTemplate;
 
     @Test
     void saveShop() {
         shopService.saveShopWithLogicalExpired(2L, 100L, TimeUnit.SECONDS);
     }
+
+    /**
+     * 每次INCR和分段预留两种方式并发生成id：所有id不重复，同一个线程内单调递增
+     */
+    @Test
+    void testIdWorker() throws Exception {
+        String keyPrefix = "bench:" + RandomUtil.randomString(8);
+        try {
+            assertIds(() -> redisIdWorker.nextId(keyPrefix));
+            assertIds(() -> redisIdWorker.nextSegmentId(keyPrefix));
+        } finally {
+            Set<String> keys = stringRedisTemplate.keys("icr:bench:*");
+            if (keys != null && !keys.isEmpty()) {
+                stringRedisTemplate.delete(keys);
+            }
+        }
+    }
+
+    private void assertIds(LongSupplier generator) throws Exception {
+        int threads = 50;
+        int perThread = 1000;
+        ExecutorService es = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<long[]>> futures = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                futures.add(es.submit(() -> {
+                    long[] ids = new long[perThread];
+                    for (int j = 0; j < perThread; j++) {
+                        ids[j] = generator.getAsLong();
+                    }
+                    return ids;
+                }));
+            }
+            Set<Long> all = new HashSet<>(threads * perThread * 2);
+            for (Future<long[]> future : futures) {
+                long[] ids = future.get();
+                for (int j = 0; j < ids.length; j++) {
+                    if (j > 0) {
+                        assertTrue(ids[j] > ids[j - 1], "同一个线程生成的id应当递增");
+                    }
+                    all.add(ids[j]);
+                }
+            }
+            assertEquals(threads * perThread, all.size());
+        } finally {
+            es.shutdown();
+        }
+    }
+
+    /**
+     * 同一个新手机号并发首次登录，只创建一个用户，所有请求登录的都是这个用户
+     */
+    @Test
+    void testLoginStorm() throws Exception {
+        String phone = "139" + RandomUtil.randomNumbers(8);
+        String code = RandomUtil.randomNumbers(6);
+        stringRedisTemplate.opsForValue().set(RedisConstants.LOGIN_CODE_KEY + phone, code, 10, TimeUnit.MINUTES);
+        LoginFormDTO form = new LoginFormDTO();
+        form.setPhone(phone);
+        form.setCode(code);
+        List<String> tokens = new ArrayList<>();
+        try {
+            tokens.addAll(concurrentLogin(form, 200));
+
+            List<User> users = userService.query().eq("phone", phone).list();
+            assertEquals(1, users.size());
+            Long userId = users.get(0).getId();
+            for (String token : tokens) {
+                Object id = stringRedisTemplate.opsForHash().get(RedisConstants.LOGIN_USER_KEY + token, "id");
+                assertEquals(String.valueOf(userId), id);
+            }
+        } finally {
+            List<User> users = userService.query().eq("phone", phone).list();
+            userService.remove(new QueryWrapper<User>().eq("phone", phone));
+            List<String> keys = new ArrayList<>();
+            keys.add(RedisConstants.LOGIN_CODE_KEY + phone);
+            keys.add(RedisConstants.CACHE_USER_PHONE_KEY + phone);
+            users.forEach(user -> keys.add(RedisConstants.CACHE_USER_KEY + user.getId()));
+            tokens.forEach(token -> keys.add(RedisConstants.LOGIN_USER_KEY + token));
+            stringRedisTemplate.delete(keys);
+        }
+    }
+
+    /**
+     * 所有线程同时开始登录
+     * @return 每个请求拿到的token，任何一个请求失败时断言失败
+     */
+    private List<String> concurrentLogin(LoginFormDTO form, int threads) throws Exception {
+        ExecutorService es = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Result>> futures = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                futures.add(es.submit(() -> {
+                    start.await();
+                    return userService.login(form, null);
+                }));
+            }
+            start.countDown();
+            List<String> tokens = new ArrayList<>(threads);
+            for (Future<Result> future : futures) {
+                Result result = future.get();
+                assertTrue(result.getSuccess(), result.getErrorMsg());
+                tokens.add((String) result.getData());
+            }
+            return tokens;
+        } finally {
+            es.shutdown();
+        }
+    }
 }
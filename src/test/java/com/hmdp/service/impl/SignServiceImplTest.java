@@ -0,0 +1,121 @@
+package com.hmdp.service.impl;
+
+import com.hmdp.dto.SignCountDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SignServiceImplTest {
+
+    private static final long USER_ID = 1010L;
+
+    /**
+     * 每个签到key中已经签到的日期
+     */
+    private final Map<String, Set<Integer>> signed = new HashMap<>();
+
+    private SignServiceImpl signService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+        // 按redis的规则计算 BITFIELD GET u{day} 0：第n天是第n-1位，取出的值中最后一天在最低位
+        when(valueOperations.bitField(anyString(), any(BitFieldSubCommands.class))).thenAnswer(invocation -> {
+            BitFieldSubCommands commands = invocation.getArgument(1);
+            int width = commands.getSubCommands().get(0).getType().getBits();
+            long value = 0;
+            for (int day : signed.getOrDefault(invocation.<String>getArgument(0), Collections.emptySet())) {
+                if (day <= width) {
+                    value |= 1L << (width - day);
+                }
+            }
+            return Collections.singletonList(value);
+        });
+        StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        signService = new SignServiceImpl();
+        ReflectionTestUtils.setField(signService, "stringRedisTemplate", stringRedisTemplate);
+    }
+
+    @Test
+    void continuousEndsToday() {
+        LocalDate today = LocalDate.of(2026, 10, 18);
+        sign(today, 10, 14, 15, 16, 17, 18);
+
+        assertCount(5, 6, signService.signCount(USER_ID, today));
+    }
+
+    @Test
+    void continuousIsZeroWhenTodayNotSigned() {
+        LocalDate today = LocalDate.of(2026, 10, 18);
+        sign(today, 15, 16, 17);
+
+        assertCount(0, 3, signService.signCount(USER_ID, today));
+    }
+
+    @Test
+    void futureDaysIgnored() {
+        LocalDate today = LocalDate.of(2026, 10, 18);
+        sign(today, 17, 18, 19);
+
+        assertCount(2, 2, signService.signCount(USER_ID, today));
+    }
+
+    @Test
+    void firstDayOfMonthSigned() {
+        LocalDate today = LocalDate.of(2026, 11, 1);
+        // 上个月的签到不影响本月的统计
+        sign(today.minusDays(1), 29, 30, 31);
+        sign(today, 1);
+
+        assertCount(1, 1, signService.signCount(USER_ID, today));
+    }
+
+    @Test
+    void firstDayOfMonthNotSigned() {
+        LocalDate today = LocalDate.of(2026, 11, 1);
+        sign(today.minusDays(1), 31);
+
+        assertCount(0, 0, signService.signCount(USER_ID, today));
+    }
+
+    @Test
+    void wholeMonthSigned() {
+        LocalDate today = LocalDate.of(2026, 10, 31);
+        Integer[] days = new Integer[31];
+        for (int i = 0; i < days.length; i++) {
+            days[i] = i + 1;
+        }
+        sign(today, days);
+
+        assertCount(31, 31, signService.signCount(USER_ID, today));
+    }
+
+    private void sign(LocalDate month, Integer... days) {
+        signed.computeIfAbsent(SignServiceImpl.signKey(USER_ID, month), k -> new HashSet<>())
+                .addAll(Arrays.asList(days));
+    }
+
+    private static void assertCount(int continuous, int count, SignCountDTO result) {
+        assertEquals(continuous, result.getContinuous());
+        assertEquals(count, result.getCount());
+    }
+}
@@ -0,0 +1,173 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import lombok.Data;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryCacheSerializerTest {
+
+    private final BinaryCacheSerializer serializer = new BinaryCacheSerializer();
+
+    @Test
+    void roundTripShop() {
+        Shop shop = shop(1L);
+        byte[] bytes = serializer.serialize(shop);
+
+        assertTrue(serializer.canRead(bytes));
+        assertEquals(shop, serializer.deserialize(bytes, Shop.class));
+    }
+
+    @Test
+    void roundTripRedisData() {
+        RedisData redisData = RedisData.builder()
+                .expireTime(LocalDateTime.of(2026, 10, 18, 12, 30, 15, 123000000))
+                .rebuildCost(42L)
+                .data(shop(2L))
+                .build();
+
+        RedisData result = serializer.deserializeWithExpire(serializer.serializeWithExpire(redisData), Shop.class);
+
+        assertEquals(redisData, result);
+    }
+
+    @Test
+    void roundTripRedisDataWithoutDataAndCost() {
+        RedisData redisData = RedisData.builder().expireTime(LocalDateTime.now()).build();
+
+        RedisData result = serializer.deserializeWithExpire(serializer.serializeWithExpire(redisData), Shop.class);
+
+        assertEquals(redisData.getExpireTime(), result.getExpireTime());
+        assertNull(result.getData());
+        assertNull(result.getRebuildCost());
+    }
+
+    @Test
+    void roundTripNullFields() {
+        Shop shop = new Shop();
+        shop.setId(3L);
+
+        Shop result = serializer.deserialize(serializer.serialize(shop), Shop.class);
+
+        assertEquals(shop, result);
+        assertNull(result.getName());
+        assertNull(result.getCreateTime());
+    }
+
+    @Test
+    void roundTripNestedTypesAndLists() {
+        Catalog catalog = new Catalog();
+        catalog.setName("附近");
+        catalog.setLevel(Level.HIGH);
+        catalog.setDay(LocalDate.of(2026, 10, 18));
+        catalog.setTop(shop(4L));
+        catalog.setShops(Arrays.asList(shop(5L), shop(6L)));
+        catalog.setTags(new ArrayList<>(Arrays.asList("咖啡", "甜品")));
+        catalog.setScores(Collections.singletonMap("taste", 5));
+        catalog.setCount(-7);
+
+        Catalog result = serializer.deserialize(serializer.serialize(catalog), Catalog.class);
+
+        assertEquals(catalog, result);
+        // 集合中的元素按字段的泛型还原，不是JSON对象
+        assertEquals(Shop.class, result.getShops().get(0).getClass());
+    }
+
+    @Test
+    void rejectSchemaFingerprintMismatch() {
+        byte[] bytes = serializer.serialize(shop(7L));
+        // 魔数、版本、类型之后是结构指纹
+        bytes[3] ^= 0x01;
+
+        assertThrows(IllegalStateException.class, () -> serializer.deserialize(bytes, Shop.class));
+    }
+
+    @Test
+    void rejectOtherType() {
+        byte[] bytes = serializer.serialize(shop(8L));
+
+        assertThrows(IllegalStateException.class, () -> serializer.deserialize(bytes, Catalog.class));
+    }
+
+    @Test
+    void rejectTopLevelCollection() {
+        assertThrows(IllegalArgumentException.class,
+                () -> serializer.serialize(new ArrayList<>(Collections.singletonList(shop(9L)))));
+    }
+
+    @Test
+    void readVersion1RedisData() {
+        LocalDateTime expireTime = LocalDateTime.of(2026, 1, 1, 0, 0);
+        Shop shop = shop(10L);
+        byte[] v2 = serializer.serializeWithExpire(RedisData.builder().expireTime(expireTime).data(shop).build());
+        // 版本1没有重建耗时：去掉逻辑过期时间之后的那一个字节(null写为-1，只占1个字节)
+        int timeLength = serializer.serializeWithExpire(RedisData.builder().expireTime(expireTime).build()).length - 5;
+        int costIndex = 3 + timeLength;
+        byte[] v1 = new byte[v2.length - 1];
+        System.arraycopy(v2, 0, v1, 0, costIndex);
+        System.arraycopy(v2, costIndex + 1, v1, costIndex, v2.length - costIndex - 1);
+        v1[1] = 1;
+
+        RedisData result = serializer.deserializeWithExpire(v1, Shop.class);
+
+        assertEquals(expireTime, result.getExpireTime());
+        assertNull(result.getRebuildCost());
+        assertEquals(shop, result.getData());
+    }
+
+    @Test
+    void rejectUnknownVersion() {
+        byte[] bytes = serializer.serialize(shop(11L));
+        bytes[1] = 9;
+
+        assertThrows(IllegalStateException.class, () -> serializer.deserialize(bytes, Shop.class));
+    }
+
+    private static Shop shop(long id) {
+        Shop shop = new Shop();
+        shop.setId(id);
+        shop.setName("店铺" + id);
+        shop.setTypeId(1L);
+        shop.setImages("https://img.example.com/" + id + ".jpg");
+        shop.setArea("大关");
+        shop.setAddress("金华路" + id + "号");
+        shop.setX(120.149192);
+        shop.setY(30.316078);
+        shop.setAvgPrice(80L);
+        shop.setSold(4215);
+        shop.setComments(3035);
+        shop.setScore(37);
+        shop.setOpenHours("10:00-22:00");
+        shop.setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39));
+        shop.setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+        return shop;
+    }
+
+    enum Level {
+        LOW, HIGH
+    }
+
+    @Data
+    static class Catalog {
+        private String name;
+        private Level level;
+        private LocalDate day;
+        private Shop top;
+        private List<Shop> shops;
+        private List<String> tags;
+        private Map<String, Integer> scores;
+        private int count;
+    }
+}
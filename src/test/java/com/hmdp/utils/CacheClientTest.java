@@ -0,0 +1,176 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.CacheProperties;
+import com.hmdp.entity.Shop;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CacheClientTest {
+
+    private static final String KEY_PREFIX = RedisConstants.CACHE_SHOP_KEY;
+
+    /**
+     * 内存中的redis数据
+     */
+    private final Map<String, byte[]> redis = new ConcurrentHashMap<>();
+    /**
+     * 数据库中的店铺
+     */
+    private final Map<Long, Shop> db = new ConcurrentHashMap<>();
+    private final AtomicInteger dbQueries = new AtomicInteger();
+    private final Function<Long, Shop> dbFallback = id -> {
+        dbQueries.incrementAndGet();
+        return db.get(id);
+    };
+
+    private CacheClient cacheClient;
+
+    @BeforeEach
+    void setUp() {
+        RedisConnection connection = mock(RedisConnection.class);
+        when(connection.get(any(byte[].class))).thenAnswer(invocation -> redis.get(key(invocation.getArgument(0))));
+        when(connection.set(any(byte[].class), any(byte[].class))).thenAnswer(invocation -> {
+            redis.put(key(invocation.getArgument(0)), invocation.getArgument(1));
+            return true;
+        });
+        when(connection.set(any(byte[].class), any(byte[].class), any(Expiration.class),
+                any(RedisStringCommands.SetOption.class))).thenAnswer(invocation -> {
+            redis.put(key(invocation.getArgument(0)), invocation.getArgument(1));
+            return true;
+        });
+        StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+        when(stringRedisTemplate.getStringSerializer()).thenReturn(StringRedisSerializer.UTF_8);
+        when(stringRedisTemplate.execute(any(RedisCallback.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0, RedisCallback.class).doInRedis(connection));
+        when(stringRedisTemplate.executePipelined(any(RedisCallback.class))).thenAnswer(invocation -> {
+            invocation.getArgument(0, RedisCallback.class).doInRedis(connection);
+            return null;
+        });
+        when(stringRedisTemplate.delete(anyString()))
+                .thenAnswer(invocation -> redis.remove(invocation.<String>getArgument(0)) != null);
+
+        CacheProperties properties = new CacheProperties();
+        NearCache nearCache = new NearCache(properties, new SimpleMeterRegistry(), stringRedisTemplate,
+                mock(RedisMessageListenerContainer.class));
+        RedisBloomFilter bloomFilter = mock(RedisBloomFilter.class);
+        when(bloomFilter.mightContain(anyString(), any())).thenReturn(true);
+        CacheRebuildExecutor rebuildExecutor = mock(CacheRebuildExecutor.class);
+        DistributedLock distributedLock = mock(DistributedLock.class);
+        when(distributedLock.tryLock(anyString())).thenReturn(true);
+        cacheClient = new CacheClient(stringRedisTemplate, nearCache, bloomFilter, rebuildExecutor,
+                distributedLock, properties);
+    }
+
+    @Test
+    void readAfterUpdate() {
+        db.put(1L, shop(1L, "旧店名"));
+        cacheClient.setWithLogicalExpire(KEY_PREFIX + 1, db.get(1L), 30L, TimeUnit.MINUTES);
+        assertEquals("旧店名", query(1L).getName());
+
+        // 更新店铺：先写数据库，再删除缓存
+        db.put(1L, shop(1L, "新店名"));
+        cacheClient.delete(KEY_PREFIX + 1);
+
+        assertEquals("新店名", query(1L).getName());
+        assertEquals(1, dbQueries.get());
+        // 重新写入了逻辑过期数据，之后的查询不再访问数据库
+        assertNotNull(redis.get(KEY_PREFIX + 1));
+        assertEquals("新店名", query(1L).getName());
+        assertEquals(1, dbQueries.get());
+    }
+
+    @Test
+    void readNewShopWithoutCache() {
+        db.put(2L, shop(2L, "新开的店"));
+
+        assertEquals("新开的店", query(2L).getName());
+        assertEquals(1, dbQueries.get());
+    }
+
+    @Test
+    void cacheNullForMissingShop() {
+        assertNull(query(3L));
+        assertNull(query(3L));
+
+        assertEquals(1, dbQueries.get());
+        assertEquals(0, redis.get(KEY_PREFIX + 3).length);
+    }
+
+    @Test
+    void loadWhenEntryUnreadable() {
+        db.put(4L, shop(4L, "店铺"));
+        redis.put(KEY_PREFIX + 4, "not a cache entry".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("店铺", query(4L).getName());
+        assertEquals(1, dbQueries.get());
+    }
+
+    @Test
+    void warmedEntriesSpreadExpireAndRecordCost() {
+        Map<String, Shop> values = new LinkedHashMap<>();
+        for (long id = 1; id <= 50; id++) {
+            values.put(KEY_PREFIX + id, shop(id, "店铺" + id));
+        }
+        LocalDateTime begin = LocalDateTime.now();
+
+        cacheClient.setAllWithLogicalExpire(values, 30L, TimeUnit.MINUTES, Duration.ofMinutes(10), 25L);
+
+        Set<LocalDateTime> expireTimes = new HashSet<>();
+        BinaryCacheSerializer reader = new BinaryCacheSerializer();
+        JsonCacheSerializer jsonReader = new JsonCacheSerializer();
+        for (String key : values.keySet()) {
+            byte[] bytes = redis.get(key);
+            RedisData redisData = reader.canRead(bytes) ? reader.deserializeWithExpire(bytes, Shop.class)
+                    : jsonReader.deserializeWithExpire(bytes, Shop.class);
+            assertEquals(25L, redisData.getRebuildCost());
+            assertTrue(!redisData.getExpireTime().isBefore(begin.plusMinutes(30)));
+            assertTrue(redisData.getExpireTime().isBefore(begin.plusMinutes(41)));
+            expireTimes.add(redisData.getExpireTime());
+        }
+        assertTrue(expireTimes.size() > 1);
+    }
+
+    private Shop query(Long id) {
+        return cacheClient.queryWithLogicalExpire(KEY_PREFIX, id, Shop.class, dbFallback, 30L, TimeUnit.MINUTES);
+    }
+
+    private static String key(byte[] rawKey) {
+        return new String(rawKey, StandardCharsets.UTF_8);
+    }
+
+    private static Shop shop(long id, String name) {
+        Shop shop = new Shop();
+        shop.setId(id);
+        shop.setName(name);
+        return shop;
+    }
+}
@@ -0,0 +1,66 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ClientIpResolverTest {
+
+    private final ClientIpResolver resolver = new ClientIpResolver(Arrays.asList("127.0.0.1", "::1", "10.0.0.0/8"));
+
+    @Test
+    void directRequestUsesRemoteAddr() {
+        assertEquals("203.0.113.7", resolver.resolve(request("203.0.113.7", null, null)));
+    }
+
+    @Test
+    void proxiedRequestUsesForwardedClient() {
+        // nginx: proxy_set_header X-Forwarded-For $proxy_add_x_forwarded_for
+        assertEquals("203.0.113.7", resolver.resolve(request("127.0.0.1", "203.0.113.7", null)));
+        assertEquals("198.51.100.9", resolver.resolve(request("127.0.0.1", "198.51.100.9", null)));
+    }
+
+    @Test
+    void proxiedRequestUsesRealIp() {
+        assertEquals("203.0.113.7", resolver.resolve(request("127.0.0.1", null, "203.0.113.7")));
+    }
+
+    @Test
+    void ipv6LoopbackIsTrusted() {
+        assertEquals("203.0.113.7", resolver.resolve(request("0:0:0:0:0:0:0:1", "203.0.113.7", null)));
+    }
+
+    @Test
+    void skipTrustedHopsFromRight() {
+        // 客户端伪造了最左边的地址，经过内网的两层代理
+        MockHttpServletRequest request = request("127.0.0.1", "1.2.3.4, 203.0.113.7, 10.0.0.2", null);
+
+        assertEquals("203.0.113.7", resolver.resolve(request));
+    }
+
+    @Test
+    void ignoreHeadersFromUntrustedRemote() {
+        assertEquals("203.0.113.7", resolver.resolve(request("203.0.113.7", "1.2.3.4", "1.2.3.4")));
+    }
+
+    @Test
+    void stopAtUnrecognizedHop() {
+        assertEquals("10.0.0.2", resolver.resolve(request("127.0.0.1", "unknown, 10.0.0.2", null)));
+        assertEquals("127.0.0.1", resolver.resolve(request("127.0.0.1", "unknown", null)));
+    }
+
+    private static MockHttpServletRequest request(String remoteAddr, String forwardedFor, String realIp) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(remoteAddr);
+        if (forwardedFor != null) {
+            request.addHeader("X-Forwarded-For", forwardedFor);
+        }
+        if (realIp != null) {
+            request.addHeader("X-Real-IP", realIp);
+        }
+        return request;
+    }
+}
@@ -0,0 +1,258 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DistributedLockTest {
+
+    private static final String LOCK_KEY = RedisConstants.LOCK_KEY + "test";
+    private static final long WATCHDOG_LEASE = 300;
+
+    private static final String ACQUIRE_SHA = sha1("lua/lock_acquire.lua");
+    private static final String RELEASE_SHA = sha1("lua/lock_release.lua");
+    private static final String RENEW_SHA = sha1("lua/lock_renew.lua");
+
+    /**
+     * 内存中的锁，按 lock_*.lua 的逻辑执行脚本：key -> 持有者 -> 重入次数，以及过期时间
+     */
+    private final Map<String, Map<String, Integer>> holders = new HashMap<>();
+    private final Map<String, Long> expireAt = new HashMap<>();
+    private final AtomicInteger renewals = new AtomicInteger();
+
+    private final ExecutorService other = Executors.newSingleThreadExecutor();
+    private DistributedLock lock;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), (Object[]) any())).thenAnswer(invocation -> {
+            RedisScript<?> script = invocation.getArgument(0);
+            List<String> keys = invocation.getArgument(1);
+            Object[] args = invocation.getArguments();
+            if (ACQUIRE_SHA.equals(script.getSha1())) {
+                return acquire(keys.get(0), Long.parseLong((String) args[2]), (String) args[3]);
+            }
+            if (RELEASE_SHA.equals(script.getSha1())) {
+                return release(keys.get(0), keys.get(1), (String) args[2], Long.parseLong((String) args[3]),
+                        (String) args[4]);
+            }
+            if (RENEW_SHA.equals(script.getSha1())) {
+                return renew(keys.get(0), Long.parseLong((String) args[2]), (String) args[3]);
+            }
+            throw new IllegalArgumentException("未知的脚本");
+        });
+        HashOperations<String, Object, Object> hashOperations = mock(HashOperations.class);
+        when(hashOperations.hasKey(anyString(), any())).thenAnswer(invocation -> {
+            synchronized (this) {
+                return live(invocation.getArgument(0)).containsKey(invocation.<String>getArgument(1));
+            }
+        });
+        when(stringRedisTemplate.opsForHash()).thenReturn(hashOperations);
+        lock = new DistributedLock(stringRedisTemplate, mock(RedisMessageListenerContainer.class), WATCHDOG_LEASE);
+    }
+
+    @AfterEach
+    void tearDown() {
+        other.shutdownNow();
+        lock.shutdown();
+    }
+
+    @Test
+    void reentrantUnlockNeedsSameCount() {
+        assertTrue(lock.tryLock(LOCK_KEY));
+        assertTrue(lock.tryLock(LOCK_KEY));
+
+        lock.unlock(LOCK_KEY);
+        assertTrue(lock.isHeldByCurrentThread(LOCK_KEY));
+
+        lock.unlock(LOCK_KEY);
+        assertFalse(lock.isHeldByCurrentThread(LOCK_KEY));
+        assertFalse(holders.containsKey(LOCK_KEY));
+    }
+
+    @Test
+    void otherThreadCannotAcquireOrUnlock() throws Exception {
+        assertTrue(lock.tryLock(LOCK_KEY));
+
+        assertFalse(other.submit(() -> lock.tryLock(LOCK_KEY)).get());
+        Future<?> unlock = other.submit(() -> lock.unlock(LOCK_KEY));
+        Exception e = assertThrows(Exception.class, unlock::get);
+        assertTrue(e.getCause() instanceof IllegalMonitorStateException);
+
+        assertTrue(lock.isHeldByCurrentThread(LOCK_KEY));
+        lock.unlock(LOCK_KEY);
+    }
+
+    @Test
+    void unlockExpiredLockThrows() throws Exception {
+        assertTrue(lock.tryLock(LOCK_KEY, 0, 50, TimeUnit.MILLISECONDS));
+        Thread.sleep(100);
+
+        assertThrows(IllegalMonitorStateException.class, () -> lock.unlock(LOCK_KEY));
+    }
+
+    @Test
+    void watchdogRenewsUntilUnlock() throws Exception {
+        assertTrue(lock.tryLock(LOCK_KEY));
+        // 超过租期的两倍仍然持有
+        Thread.sleep(WATCHDOG_LEASE * 2 + 100);
+
+        assertTrue(lock.isHeldByCurrentThread(LOCK_KEY));
+        assertTrue(renewals.get() >= 4);
+
+        lock.unlock(LOCK_KEY);
+        int renewed = renewals.get();
+        Thread.sleep(WATCHDOG_LEASE);
+        assertEquals(renewed, renewals.get());
+    }
+
+    @Test
+    void explicitLeaseIsNotRenewed() throws Exception {
+        assertTrue(lock.tryLock(LOCK_KEY, 0, WATCHDOG_LEASE, TimeUnit.MILLISECONDS));
+        Thread.sleep(WATCHDOG_LEASE + 100);
+
+        assertEquals(0, renewals.get());
+        assertFalse(lock.isHeldByCurrentThread(LOCK_KEY));
+    }
+
+    @Test
+    void waiterWokenByReleaseMessage() throws Exception {
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // 另一个线程持有10秒的锁，不经过通知时等待的线程要等到锁过期
+        Future<?> holder = other.submit(() -> {
+            assertTrue(lock.tryLock(LOCK_KEY, 0, 10, TimeUnit.SECONDS));
+            locked.countDown();
+            release.await();
+            lock.unlock(LOCK_KEY);
+            return null;
+        });
+        locked.await();
+        new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+            release.countDown();
+        }).start();
+
+        long begin = System.currentTimeMillis();
+        assertTrue(lock.tryLock(LOCK_KEY, 5, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - begin < 2000);
+        holder.get();
+        lock.unlock(LOCK_KEY);
+        assertTrue(waiters().isEmpty());
+    }
+
+    @Test
+    void waitTimesOut() throws Exception {
+        assertTrue(other.submit(() -> lock.tryLock(LOCK_KEY, 0, 10, TimeUnit.SECONDS)).get());
+
+        long begin = System.currentTimeMillis();
+        assertFalse(lock.tryLock(LOCK_KEY, 200, TimeUnit.MILLISECONDS));
+        assertTrue(System.currentTimeMillis() - begin >= 200);
+        assertTrue(waiters().isEmpty());
+    }
+
+    @Test
+    void waiterRetriesWhenLockExpires() throws Exception {
+        // 持有者宕机，锁释放的通知不会到达，等待的线程在锁过期时重试
+        assertTrue(other.submit(() -> lock.tryLock(LOCK_KEY, 0, 200, TimeUnit.MILLISECONDS)).get());
+
+        assertTrue(lock.tryLock(LOCK_KEY, 2, TimeUnit.SECONDS));
+        lock.unlock(LOCK_KEY);
+    }
+
+    private synchronized Long acquire(String key, long leaseMillis, String owner) {
+        Map<String, Integer> owners = live(key);
+        if (owners.isEmpty() || owners.containsKey(owner)) {
+            owners.merge(owner, 1, Integer::sum);
+            holders.put(key, owners);
+            expireAt.put(key, System.currentTimeMillis() + leaseMillis);
+            return null;
+        }
+        return expireAt.get(key) - System.currentTimeMillis();
+    }
+
+    private Long release(String key, String channel, String owner, long leaseMillis, String message) {
+        synchronized (this) {
+            Map<String, Integer> owners = live(key);
+            if (!owners.containsKey(owner)) {
+                return null;
+            }
+            int counter = owners.merge(owner, -1, Integer::sum);
+            if (counter > 0) {
+                expireAt.put(key, System.currentTimeMillis() + leaseMillis);
+                return 0L;
+            }
+            holders.remove(key);
+            expireAt.remove(key);
+        }
+        lock.onMessage(new DefaultMessage(channel.getBytes(StandardCharsets.UTF_8),
+                message.getBytes(StandardCharsets.UTF_8)), null);
+        return 1L;
+    }
+
+    private synchronized Long renew(String key, long leaseMillis, String owner) {
+        if (!live(key).containsKey(owner)) {
+            return 0L;
+        }
+        renewals.incrementAndGet();
+        expireAt.put(key, System.currentTimeMillis() + leaseMillis);
+        return 1L;
+    }
+
+    /**
+     * 过期的锁视为不存在
+     */
+    private Map<String, Integer> live(String key) {
+        Long expire = expireAt.get(key);
+        if (expire != null && expire <= System.currentTimeMillis()) {
+            holders.remove(key);
+            expireAt.remove(key);
+        }
+        return holders.getOrDefault(key, new HashMap<>());
+    }
+
+    private Map<?, ?> waiters() {
+        return (Map<?, ?>) ReflectionTestUtils.getField(lock, "waiters");
+    }
+
+    private static String sha1(String path) {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setLocation(new ClassPathResource(path));
+        return script.getSha1();
+    }
+}
@@ -0,0 +1,97 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.RandomUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.beans.factory.config.YamlPropertiesFactoryBean;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RedisIdWorker 每次访问redis和分段预留两种模式的吞吐量对比，需要application.yaml中配置的redis，
+ * 可以用 -Dspring.redis.host 等系统属性覆盖。不是单元测试，运行方式：
+ * mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ *   -Dexec.args="-cp %classpath com.hmdp.utils.RedisIdWorkerBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class RedisIdWorkerBenchmark {
+
+    @Param({"1000"})
+    private int segmentSize;
+
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate stringRedisTemplate;
+    private RedisIdWorker redisIdWorker;
+    private String keyPrefix;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        YamlPropertiesFactoryBean yaml = new YamlPropertiesFactoryBean();
+        yaml.setResources(new ClassPathResource("application.yaml"));
+        Properties properties = yaml.getObject();
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(
+                property(properties, "spring.redis.host"),
+                Integer.parseInt(property(properties, "spring.redis.port")));
+        configuration.setPassword(property(properties, "spring.redis.password"));
+        configuration.setDatabase(Integer.parseInt(property(properties, "spring.redis.database")));
+        connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+        redisIdWorker = new RedisIdWorker(stringRedisTemplate, segmentSize);
+        keyPrefix = "bench:" + RandomUtil.randomString(8);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Set<String> keys = stringRedisTemplate.keys("icr:" + keyPrefix + ":*");
+        if (keys != null && !keys.isEmpty()) {
+            stringRedisTemplate.delete(keys);
+        }
+        connectionFactory.destroy();
+    }
+
+    @Benchmark
+    public long nextId() {
+        return redisIdWorker.nextId(keyPrefix);
+    }
+
+    @Benchmark
+    public long nextSegmentId() {
+        return redisIdWorker.nextSegmentId(keyPrefix);
+    }
+
+    private static String property(Properties properties, String name) {
+        return System.getProperty(name, properties.getProperty(name));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RedisIdWorkerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
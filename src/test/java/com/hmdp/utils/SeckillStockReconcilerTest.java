@@ -0,0 +1,174 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IVoucherOrderService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.stream.StreamInfo;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SeckillStockReconcilerTest {
+
+    private static final long VOUCHER_ID = 7L;
+    private static final String ORDER_KEY = RedisConstants.SECKILL_ORDER_KEY + VOUCHER_ID;
+
+    private StringRedisTemplate stringRedisTemplate;
+    private SetOperations<String, String> setOperations;
+    private StreamOperations<String, Object, Object> streamOperations;
+    private ISeckillVoucherService seckillVoucherService;
+    private IVoucherOrderService voucherOrderService;
+    private SeckillStockManager stockManager;
+    private SimpleMeterRegistry meterRegistry;
+    private SeckillStockReconciler reconciler;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        setOperations = mock(SetOperations.class);
+        streamOperations = mock(StreamOperations.class);
+        when(stringRedisTemplate.opsForSet()).thenReturn(setOperations);
+        when(stringRedisTemplate.opsForStream()).thenReturn(streamOperations);
+        seckillVoucherService = mock(ISeckillVoucherService.class);
+        voucherOrderService = mock(IVoucherOrderService.class);
+        stockManager = mock(SeckillStockManager.class);
+        DistributedLock distributedLock = mock(DistributedLock.class);
+        when(distributedLock.tryLock(anyString())).thenReturn(true);
+
+        SeckillProperties properties = new SeckillProperties();
+        properties.getReconcile().setMode(SeckillProperties.ReconcileMode.REPAIR);
+        meterRegistry = new SimpleMeterRegistry();
+        reconciler = new SeckillStockReconciler(stringRedisTemplate, seckillVoucherService, voucherOrderService,
+                stockManager, distributedLock, properties, meterRegistry);
+
+        // 第一次查询是分页的优惠券id，第二次是读取redis快照之后的数据库库存
+        when(seckillVoucherService.list(any(Wrapper.class))).thenReturn(
+                Collections.singletonList(voucher(null)),
+                Collections.singletonList(voucher(9)));
+        when(voucherOrderService.listMaps(any(Wrapper.class))).thenReturn(Collections.singletonList(orderCount(1)));
+        backlog(0, "5-0");
+    }
+
+    @Test
+    void skipWhenOrderPersistedBetweenReads() {
+        // 读redis快照时还没有下单，读数据库之前有一个订单扣减了redis并写入了数据库
+        when(stockManager.getStocks(any())).thenReturn(stocks(10), stocks(9));
+        when(setOperations.size(ORDER_KEY)).thenReturn(0L, 1L);
+
+        reconciler.reconcile();
+
+        assertEquals(0, count("seckill.reconcile.divergence"));
+        verify(stringRedisTemplate, never()).execute(any(RedisScript.class), anyList(), (Object[]) any());
+    }
+
+    @Test
+    void skipWhenOrderBacklogNotEmpty() {
+        // redis已经扣减，订单还在stream中没有写入数据库
+        when(stockManager.getStocks(any())).thenReturn(stocks(8));
+        when(setOperations.size(ORDER_KEY)).thenReturn(2L);
+        backlog(1, "4-0");
+
+        reconciler.reconcile();
+
+        assertEquals(0, count("seckill.reconcile.divergence"));
+        verify(voucherOrderService, never()).listMaps(any(Wrapper.class));
+    }
+
+    @Test
+    void repairWithSnapshotAsExpectedValues() {
+        // redis中少了一个库存，两次快照相同且队列为空，是真实的不一致
+        when(stockManager.getStocks(any())).thenReturn(stocks(8));
+        when(setOperations.size(ORDER_KEY)).thenReturn(1L);
+        scan("1001");
+        when(voucherOrderService.listObjs(any(Wrapper.class))).thenReturn(Collections.singletonList(1001L));
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), (Object[]) any())).thenReturn(0L);
+
+        reconciler.reconcile();
+
+        assertEquals(1, count("seckill.reconcile.divergence"));
+        assertEquals(1, count("seckill.reconcile.repaired"));
+        verify(stringRedisTemplate).execute(any(RedisScript.class),
+                eq(Arrays.asList(ORDER_KEY, SeckillStockManager.stockKey(VOUCHER_ID))),
+                eq("8"), eq("1"), eq("1"));
+        verify(stockManager).notifyReplenished(VOUCHER_ID);
+    }
+
+    @Test
+    void abandonRepairWhenRedisMovedBeforeScript() {
+        when(stockManager.getStocks(any())).thenReturn(stocks(8));
+        when(setOperations.size(ORDER_KEY)).thenReturn(1L);
+        scan("1001");
+        when(voucherOrderService.listObjs(any(Wrapper.class))).thenReturn(Collections.singletonList(1001L));
+        // 脚本核对发现库存已经不是快照中的值
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), (Object[]) any())).thenReturn(-1L);
+
+        reconciler.reconcile();
+
+        assertEquals(1, count("seckill.reconcile.divergence"));
+        assertEquals(0, count("seckill.reconcile.repaired"));
+        verify(stockManager, never()).notifyReplenished(VOUCHER_ID);
+    }
+
+    private static SeckillVoucher voucher(Integer stock) {
+        SeckillVoucher voucher = new SeckillVoucher();
+        voucher.setVoucherId(VOUCHER_ID);
+        voucher.setStock(stock);
+        return voucher;
+    }
+
+    private static Map<String, Object> orderCount(long count) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("voucher_id", VOUCHER_ID);
+        row.put("cnt", count);
+        return row;
+    }
+
+    private static Map<Long, Integer> stocks(int stock) {
+        return Collections.singletonMap(VOUCHER_ID, stock);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void scan(String userId) {
+        Cursor<String> cursor = mock(Cursor.class);
+        when(cursor.hasNext()).thenReturn(true, false);
+        when(cursor.next()).thenReturn(userId);
+        when(setOperations.scan(eq(ORDER_KEY), any())).thenReturn(cursor);
+    }
+
+    private void backlog(long pending, String lastDeliveredId) {
+        List<Object> stream = Arrays.asList("last-generated-id", "5-0");
+        List<Object> group = Arrays.asList("name", RedisConstants.SECKILL_STREAM_GROUP,
+                "pending", pending, "last-delivered-id", lastDeliveredId);
+        when(streamOperations.info(RedisConstants.SECKILL_STREAM_KEY)).thenReturn(StreamInfo.XInfoStream.fromList(stream));
+        when(streamOperations.groups(RedisConstants.SECKILL_STREAM_KEY))
+                .thenReturn(StreamInfo.XInfoGroups.fromList(Collections.singletonList(group)));
+    }
+
+    private double count(String name) {
+        return meterRegistry.counter(name).count();
+    }
+}
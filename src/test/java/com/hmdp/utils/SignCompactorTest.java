@@ -0,0 +1,112 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Sign;
+import com.hmdp.mapper.SignMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SignCompactorTest {
+
+    private static final String CURRENT_MONTH = "202610";
+
+    private StringRedisTemplate stringRedisTemplate;
+    private SignMapper signMapper;
+    private SignCompactor compactor;
+
+    @BeforeEach
+    void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        signMapper = mock(SignMapper.class);
+        compactor = new SignCompactor(stringRedisTemplate, signMapper, mock(DistributedLock.class), 500);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void upsertAllAndDeleteOnlyFinishedMonths() {
+        List<String> keys = Arrays.asList("sign:1010:202609", "sign:1010:202610", "sign:7:202512");
+        // 1号在最高位：9月1日、10月1日和2日、12月31日
+        pipelined(bits(0x80000000L), bits(0xC0000000L), bits(0x2L));
+
+        assertEquals(3, compactor.flush(keys, CURRENT_MONTH));
+
+        ArgumentCaptor<List<Sign>> signs = ArgumentCaptor.forClass(List.class);
+        verify(signMapper).upsertBatch(signs.capture());
+        assertSign(signs.getValue().get(0), 1010L, 2026, 9, 0x80000000L);
+        assertSign(signs.getValue().get(1), 1010L, 2026, 10, 0xC0000000L);
+        assertSign(signs.getValue().get(2), 7L, 2025, 12, 0x2L);
+        ArgumentCaptor<Collection<String>> deleted = ArgumentCaptor.forClass(Collection.class);
+        verify(stringRedisTemplate).delete(deleted.capture());
+        assertEquals(Arrays.asList("sign:1010:202609", "sign:7:202512"), new ArrayList<>(deleted.getValue()));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void skipUnrecognizedKeys() {
+        List<String> keys = Arrays.asList("sign:abc:202609", "sign:1010:20269", "sign:1010:2026-9",
+                "sign:1010:202609:x", "sign:1010:202609");
+        pipelined(bits(1L), bits(1L), bits(1L), bits(1L), bits(1L));
+
+        assertEquals(1, compactor.flush(keys, CURRENT_MONTH));
+
+        ArgumentCaptor<List<Sign>> signs = ArgumentCaptor.forClass(List.class);
+        verify(signMapper).upsertBatch(signs.capture());
+        assertEquals(1, signs.getValue().size());
+        assertSign(signs.getValue().get(0), 1010L, 2026, 9, 1L);
+        ArgumentCaptor<Collection<String>> deleted = ArgumentCaptor.forClass(Collection.class);
+        verify(stringRedisTemplate).delete(deleted.capture());
+        assertEquals(Collections.singletonList("sign:1010:202609"), new ArrayList<>(deleted.getValue()));
+    }
+
+    @Test
+    void keepCurrentMonth() {
+        pipelined(bits(1L));
+
+        assertEquals(1, compactor.flush(Collections.singletonList("sign:1010:202610"), CURRENT_MONTH));
+
+        verify(signMapper).upsertBatch(anyList());
+        verify(stringRedisTemplate, never()).delete(anyCollection());
+    }
+
+    @Test
+    void nothingWrittenWhenNoRecords() {
+        pipelined(Collections.emptyList(), "not a bitfield reply");
+
+        assertEquals(0, compactor.flush(Arrays.asList("sign:1:202609", "sign:2:202609"), CURRENT_MONTH));
+
+        verify(signMapper, never()).upsertBatch(anyList());
+        verify(stringRedisTemplate, never()).delete(anyCollection());
+    }
+
+    private void pipelined(Object... results) {
+        when(stringRedisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(Arrays.asList(results));
+    }
+
+    private static List<Long> bits(long value) {
+        return Collections.singletonList(value);
+    }
+
+    private static void assertSign(Sign sign, long userId, int year, int month, long bits) {
+        assertEquals(userId, sign.getUserId());
+        assertEquals(year, sign.getYear());
+        assertEquals(month, sign.getMonth());
+        assertEquals(bits, sign.getBits());
+    }
+}
@@ -0,0 +1,179 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.codec.Base64;
+import com.hmdp.config.LoginProperties;
+import com.hmdp.dto.UserDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SignedTokenManagerTest {
+
+    private StringRedisTemplate stringRedisTemplate;
+    private ZSetOperations<String, String> zSetOperations;
+    private ValueOperations<String, String> valueOperations;
+    private LoginProperties properties;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        zSetOperations = mock(ZSetOperations.class);
+        valueOperations = mock(ValueOperations.class);
+        when(stringRedisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        properties = new LoginProperties();
+        properties.setTokenMode(LoginProperties.TokenMode.SIGNED);
+        properties.getSigned().setSecret("test-secret");
+    }
+
+    private SignedTokenManager manager() {
+        return new SignedTokenManager(stringRedisTemplate, null, properties);
+    }
+
+    private static UserDTO user(long id) {
+        UserDTO user = new UserDTO();
+        user.setId(id);
+        user.setNickName("user_" + id);
+        user.setIcon("/imgs/" + id + ".png");
+        return user;
+    }
+
+    @Test
+    void roundTrip() {
+        SignedTokenManager manager = manager();
+        String token = manager.issue(user(1010L));
+
+        SignedTokenManager.SignedToken parsed = manager.parse(token);
+
+        assertNotNull(parsed);
+        assertEquals(user(1010L), parsed.getUser());
+        assertNotNull(parsed.getJti());
+    }
+
+    @Test
+    void rejectTamperedPayload() {
+        SignedTokenManager manager = manager();
+        String token = manager.issue(user(1010L));
+        String signature = token.substring(token.lastIndexOf('.') + 1);
+        String forged = Base64.decodeStr(token.substring(0, token.lastIndexOf('.'))).replace("1010", "1011");
+
+        assertNull(manager.parse(Base64.encodeUrlSafe(forged.getBytes(StandardCharsets.UTF_8)) + "." + signature));
+        // 其它密钥签发的token
+        properties.getSigned().setSecret("another-secret");
+        assertNull(manager.parse(manager().issue(user(1010L))));
+    }
+
+    @Test
+    void rejectExpiredToken() {
+        properties.getSigned().setTtl(Duration.ofSeconds(-1));
+        SignedTokenManager manager = manager();
+
+        assertNull(manager.parse(manager.issue(user(1010L))));
+    }
+
+    @Test
+    void logoutRevokesAllTokensOfUser() throws InterruptedException {
+        SignedTokenManager manager = manager();
+        String first = manager.issue(user(1010L));
+        String second = manager.issue(user(1010L));
+        String other = manager.issue(user(1011L));
+
+        manager.revoke(second);
+
+        assertNull(manager.parse(first));
+        assertNull(manager.parse(second));
+        assertNotNull(manager.parse(other));
+        // 登出之后重新登录签发的token有效
+        Thread.sleep(2);
+        assertNotNull(manager.parse(manager.issue(user(1010L))));
+    }
+
+    @Test
+    void logoutFromOtherNode() {
+        SignedTokenManager manager = manager();
+        String token = manager.issue(user(1010L));
+
+        manager.onMessage(new DefaultMessage(RedisConstants.LOGIN_REVOKE_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                ("1010:" + System.currentTimeMillis()).getBytes(StandardCharsets.UTF_8)), null);
+
+        assertNull(manager.parse(token));
+    }
+
+    @Test
+    void reissueOncePerToken() {
+        when(valueOperations.setIfAbsent(anyString(), anyString(), anyLong(), any())).thenReturn(true);
+        properties.getSigned().setTtl(Duration.ofMinutes(60));
+        properties.getSigned().setReissueBefore(Duration.ofMinutes(10));
+        SignedTokenManager fresh = manager();
+        assertNull(fresh.reissue(fresh.parse(fresh.issue(user(1010L)))));
+
+        properties.getSigned().setTtl(Duration.ofMinutes(5));
+        SignedTokenManager manager = manager();
+        SignedTokenManager.SignedToken expiring = manager.parse(manager.issue(user(1010L)));
+
+        String reissued = manager.reissue(expiring);
+        assertNotNull(reissued);
+        assertEquals(user(1010L), manager.parse(reissued).getUser());
+        assertNull(manager.reissue(expiring));
+    }
+
+    @Test
+    void reissueOnlyOnOneNode() {
+        when(valueOperations.setIfAbsent(anyString(), anyString(), anyLong(), any())).thenReturn(false);
+        properties.getSigned().setTtl(Duration.ofMinutes(5));
+        SignedTokenManager manager = manager();
+
+        assertNull(manager.reissue(manager.parse(manager.issue(user(1010L)))));
+    }
+
+    @Test
+    void concurrentIssueAndParse() throws Exception {
+        SignedTokenManager manager = manager();
+        int threads = 16;
+        int perThread = 2000;
+        ExecutorService es = Executors.newFixedThreadPool(threads);
+        AtomicInteger failures = new AtomicInteger();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                long userId = 1000L + i;
+                futures.add(es.submit(() -> {
+                    for (int j = 0; j < perThread; j++) {
+                        SignedTokenManager.SignedToken parsed = manager.parse(manager.issue(user(userId)));
+                        if (parsed == null || parsed.getUser().getId() != userId) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            es.shutdownNow();
+        }
+        assertEquals(0, failures.get());
+    }
+}
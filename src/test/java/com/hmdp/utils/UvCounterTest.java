@@ -0,0 +1,81 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UvCounterTest {
+
+    @Test
+    void noIdLostWhileFlushing() throws Exception {
+        Set<String> written = ConcurrentHashMap.newKeySet();
+        RedisConnection connection = mock(RedisConnection.class);
+        doAnswer(invocation -> {
+            for (int i = 1; i < invocation.getArguments().length; i++) {
+                written.add(new String((byte[]) invocation.getArguments()[i], StandardCharsets.UTF_8));
+            }
+            return 1L;
+        }).when(connection).pfAdd(any(byte[].class), (byte[][]) any());
+        StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+        when(stringRedisTemplate.executePipelined(any(RedisCallback.class))).thenAnswer(invocation -> {
+            invocation.getArgument(0, RedisCallback.class).doInRedis(connection);
+            return Collections.emptyList();
+        });
+        UvCounter counter = new UvCounter(stringRedisTemplate, true);
+
+        int threads = 8;
+        int perThread = 5000;
+        ExecutorService es = Executors.newFixedThreadPool(threads + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        try {
+            // 记录的同时不停地写入redis
+            Future<?> flusher = es.submit(() -> {
+                start.await();
+                while (running.get()) {
+                    counter.flush();
+                }
+                return null;
+            });
+            Future<?>[] recorders = new Future<?>[threads];
+            for (int t = 0; t < threads; t++) {
+                long base = (long) t * perThread;
+                recorders[t] = es.submit(() -> {
+                    start.await();
+                    for (long id = base; id < base + perThread; id++) {
+                        counter.record(id);
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            for (Future<?> recorder : recorders) {
+                recorder.get();
+            }
+            running.set(false);
+            flusher.get();
+        } finally {
+            es.shutdown();
+        }
+        counter.flush();
+
+        assertEquals(threads * perThread, written.size());
+    }
+}